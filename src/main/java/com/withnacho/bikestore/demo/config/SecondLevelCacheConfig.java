@@ -0,0 +1,65 @@
+package com.withnacho.bikestore.demo.config;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import com.withnacho.bikestore.demo.entity.Category;
+import com.withnacho.bikestore.demo.entity.Product;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration of the Hibernate second-level cache and query cache, kept in a local JCache (Caffeine) manager.
+ * Every region is created here with the limits of application.properties, and Hibernate fails to start if an entity
+ * asks for a region that does not exist, so no region is ever unbounded by mistake.
+ */
+@Configuration
+public class SecondLevelCacheConfig {
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(
+            @Value("${bikestore.jpa-cache.entity.max-entries}") long entityMaxEntries,
+            @Value("${bikestore.jpa-cache.entity.expire-after-write}") Duration entityExpireAfterWrite,
+            @Value("${bikestore.jpa-cache.query.max-entries}") long queryMaxEntries,
+            @Value("${bikestore.jpa-cache.query.expire-after-write}") Duration queryExpireAfterWrite) {
+
+        // A URI of its own, so each application context gets its own manager instead of the JVM-wide default one.
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("bikestore:hibernate-cache:" + UUID.randomUUID()), getClass().getClassLoader());
+
+        cacheManager.createCache(Product.class.getName(), region(entityMaxEntries, entityExpireAfterWrite));
+        cacheManager.createCache(Category.class.getName(), region(entityMaxEntries, entityExpireAfterWrite));
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                region(queryMaxEntries, queryExpireAfterWrite));
+        // One entry per table; it must outlive the cached queries, so it is neither bounded nor expired.
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                new CaffeineConfiguration<Object, Object>());
+
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(CacheManager hibernateCacheManager) {
+        return (properties) -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+
+    private static CaffeineConfiguration<Object, Object> region(long maxEntries, Duration expireAfterWrite) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maxEntries));
+        configuration.setExpireAfterWrite(OptionalLong.of(expireAfterWrite.toNanos()));
+        configuration.setStatisticsEnabled(true);
+        return configuration;
+    }
+
+}
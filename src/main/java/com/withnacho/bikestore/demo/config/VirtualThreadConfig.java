@@ -0,0 +1,36 @@
+package com.withnacho.bikestore.demo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration of the virtual threads mode (spring.threads.virtual.enabled=true), in which Tomcat runs every request
+ * on its own virtual thread. Transactions keep working as they are bound to the thread of the request, and the
+ * blocking JDBC calls unmount the virtual thread instead of holding a platform thread.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    /**
+     * Bounds the requests to /api/v1/** processed at the same time to the size of the connection pool,
+     * unless bikestore.virtual-threads.max-concurrent-requests says otherwise.
+     */
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int connectionPoolSize,
+            @Value("${bikestore.virtual-threads.max-concurrent-requests:0}") int maxConcurrentRequests,
+            @Value("${bikestore.virtual-threads.acquire-timeout-ms:5000}") long acquireTimeoutMillis) {
+
+        int limit = maxConcurrentRequests > 0 ? maxConcurrentRequests : connectionPoolSize;
+
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(
+                new ConcurrencyLimitFilter(limit, acquireTimeoutMillis));
+        registration.addUrlPatterns("/api/v1/*");
+        return registration;
+    }
+
+}
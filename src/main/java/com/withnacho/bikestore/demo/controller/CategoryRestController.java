@@ -3,10 +3,15 @@ package com.withnacho.bikestore.demo.controller;
 import java.io.IOException;
 import com.withnacho.bikestore.demo.entity.Category;
 import com.withnacho.bikestore.demo.response.CategoryResponseRest;
+import com.withnacho.bikestore.demo.response.CategoryStatsResponseRest;
 import com.withnacho.bikestore.demo.service.ICategoryService;
 import com.withnacho.bikestore.demo.util.CategoryExcelExporter;
+import com.withnacho.bikestore.demo.util.EntityTags;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -17,6 +22,7 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 
 @CrossOrigin(origins = {"http://localhost:4200"})
@@ -29,21 +35,62 @@ public class CategoryRestController {
 
     /**
      * REST Request for getting all the Categories.
+     * The response carries an ETag, and a request whose If-None-Match matches it is answered with
+     * 304 Not Modified and no body.
+     * @param webRequest The request, used to answer conditional requests.
+     * @param response The response, where the caching headers are set.
      * @return All the Categories in the DB.
      */
     @GetMapping("/categories")
-    public ResponseEntity<CategoryResponseRest> findCategories() {
+    public ResponseEntity<CategoryResponseRest> findCategories(WebRequest webRequest, HttpServletResponse response) {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        if (webRequest.checkNotModified(service.findCategoriesETag())) {
+            return null;
+        }
         return service.findCategories();
     }
 
     /**
      * REST Request for getting a Category by its ID.
+     * The response carries an ETag and a Last-Modified date, and a request whose If-None-Match or If-Modified-Since
+     * matches them is answered with 304 Not Modified and no body.
      * @param id The ID of the Category to be found.
+     * @param webRequest The request, used to answer conditional requests.
+     * @param response The response, where the caching headers are set.
      * @return The Category to be found.
      */
     @GetMapping("/categories/{id}")
-    public ResponseEntity<CategoryResponseRest> findCategoryById(@PathVariable Long id) {
-        return service.findCategoryById(id);
+    public ResponseEntity<CategoryResponseRest> findCategoryById(@PathVariable Long id, WebRequest webRequest,
+                                                                 HttpServletResponse response) {
+        ResponseEntity<CategoryResponseRest> categoryResponse = service.findCategoryById(id);
+
+        if (categoryResponse.getStatusCode() == HttpStatus.OK) {
+            Category category = categoryResponse.getBody().getCategoryResponse().getCategoryList().get(0);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+            if (webRequest.checkNotModified(EntityTags.of(category), EntityTags.lastModified(category))) {
+                return null;
+            }
+        }
+        return categoryResponse;
+    }
+
+    /**
+     * REST Request for getting the number of Products, total units and stock value of every Category.
+     * @return The stats of all the Categories.
+     */
+    @GetMapping("/categories/stats")
+    public ResponseEntity<CategoryStatsResponseRest> findCategoriesStats() {
+        return service.findCategoriesStats();
+    }
+
+    /**
+     * REST Request for getting the number of Products, total units and stock value of a Category.
+     * @param id The ID of the Category.
+     * @return The stats of the Category.
+     */
+    @GetMapping("/categories/{id}/stats")
+    public ResponseEntity<CategoryStatsResponseRest> findCategoryStats(@PathVariable Long id) {
+        return service.findCategoryStats(id);
     }
 
     /**
@@ -1,23 +1,44 @@
 package com.withnacho.bikestore.demo.controller;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
 import com.withnacho.bikestore.demo.entity.Product;
+import com.withnacho.bikestore.demo.response.PriceAdjustmentResponseRest;
+import com.withnacho.bikestore.demo.response.ProductChangesResponseRest;
+import com.withnacho.bikestore.demo.response.ProductImportResponseRest;
 import com.withnacho.bikestore.demo.response.ProductResponseRest;
+import com.withnacho.bikestore.demo.response.ProductSuggestionResponseRest;
+import com.withnacho.bikestore.demo.service.DecodedPicture;
+import com.withnacho.bikestore.demo.service.IProductImportService;
 import com.withnacho.bikestore.demo.service.IProductService;
-import com.withnacho.bikestore.demo.util.ProductExcelExporter;
-import com.withnacho.bikestore.demo.util.Util;
+import com.withnacho.bikestore.demo.service.ProductEventBroadcaster;
+import com.withnacho.bikestore.demo.util.EntityTags;
+import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @CrossOrigin(origins = {"http://localhost:4200"})
 @RestController
@@ -25,10 +46,15 @@ import org.springframework.web.multipart.MultipartFile;
 public class ProductRestController {
 
     private IProductService productService;
+    private IProductImportService productImportService;
+    private ProductEventBroadcaster productEventBroadcaster;
 
-    public ProductRestController(IProductService productService) {
+    public ProductRestController(IProductService productService, IProductImportService productImportService,
+                                 ProductEventBroadcaster productEventBroadcaster) {
         super();
         this.productService = productService;
+        this.productImportService = productImportService;
+        this.productEventBroadcaster = productEventBroadcaster;
     }
 
     /**
@@ -53,29 +79,135 @@ public class ProductRestController {
         product.setName(name);
         product.setQuantity(quantity);
         product.setPrice(price);
-        product.setPicture(Util.compressZLib(picture.getBytes()));
+        product.setPicture(picture.getBytes());
 
         return productService.saveProduct(product, categoryID);
     }
 
     /**
      * REST Request for getting a Product by its ID.
+     * The response carries an ETag and a Last-Modified date, and a request whose If-None-Match or If-Modified-Since
+     * matches them is answered with 304 Not Modified and no body.
      * @param id The ID of the Product to be found.
+     * @param webRequest The request, used to answer conditional requests.
+     * @param response The response, where the caching headers are set.
      * @return The Product found.
      */
     @GetMapping("/products/{id}")
-    public ResponseEntity<ProductResponseRest> findProductById(@PathVariable Long id){
-        return productService.findProductById(id);
+    public ResponseEntity<ProductResponseRest> findProductById(@PathVariable Long id, WebRequest webRequest,
+                                                               HttpServletResponse response){
+        ResponseEntity<ProductResponseRest> productResponse = productService.findProductById(id);
+
+        if (productResponse.getStatusCode() == HttpStatus.OK) {
+            Product product = productResponse.getBody().getProductResponse().getProductsList().get(0);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+            if (webRequest.checkNotModified(EntityTags.of(product), EntityTags.lastModified(product))) {
+                return null;
+            }
+        }
+        return productResponse;
+    }
+
+    /**
+     * REST Request for getting the picture of a Product.
+     * The picture is sent as is (not embedded in JSON), so it can be cached by browsers and CDNs
+     * and revalidated with If-None-Match.
+     * @param id The ID of the Product whose picture is to be found.
+     * @param webRequest The request, used to answer conditional requests.
+     * @param response The response where the picture is written.
+     * @throws IOException
+     */
+    @GetMapping("/products/{id}/picture")
+    public void findProductPicture(@PathVariable Long id, WebRequest webRequest, HttpServletResponse response)
+            throws IOException {
+
+        Optional<DecodedPicture> picture = productService.findProductPicture(id);
+
+        if (picture.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String eTag = "\"" + id + "-" + Long.toHexString(picture.get().checksum()) + "\"";
+
+        if (webRequest.checkNotModified(eTag)) {
+            return;
+        }
+
+        response.setContentType(picture.get().contentType());
+        response.setContentLength(picture.get().data().length);
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.maxAge(1, TimeUnit.HOURS).cachePublic().getHeaderValue());
+
+        ServletOutputStream servletOutput = response.getOutputStream();
+        servletOutput.write(picture.get().data());
     }
 
     /**
      * REST Request for getting a Product by its name.
      * @param name The Name of the Product to be found.
+     * @param inlinePictures True to embed the pictures in the response instead of only their URL.
      * @return The Product found.
      */
     @GetMapping("/products/filter/{name}")
-    public ResponseEntity<ProductResponseRest> findProductByName(@PathVariable String name){
-        return productService.findProductByName(name);
+    public ResponseEntity<ProductResponseRest> findProductByName(@PathVariable String name,
+            @RequestParam(value = "inlinePictures", defaultValue = "false") boolean inlinePictures){
+        return productService.findProductByName(name, inlinePictures);
+    }
+
+    /**
+     * REST Request for getting the Products whose name starts with a prefix, for autocomplete.
+     * @param prefix The beginning of the names of the Products.
+     * @param limit Maximum number of suggestions.
+     * @return The ID and name of the Products found, sorted by name.
+     */
+    @GetMapping("/products/suggest")
+    public ResponseEntity<ProductSuggestionResponseRest> suggestProducts(
+            @RequestParam("prefix") String prefix,
+            @RequestParam(value = "limit", required = false) Integer limit){
+        return productService.suggestProducts(prefix, limit);
+    }
+
+    /**
+     * REST Request for getting the Products inserted, updated or deleted since a previous request, to keep a copy
+     * of the catalog up to date without reading it all again. The first request is sent without "since"; the
+     * following ones send the "nextToken" of the previous response, right away while "hasMore" is true.
+     * @param since The nextToken of the previous response.
+     * @param limit Maximum number of changes.
+     * @return The changed Products, the deleted ones and the token of the next request.
+     */
+    @GetMapping("/products/changes")
+    public ResponseEntity<ProductChangesResponseRest> findProductChanges(
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "limit", required = false) Integer limit){
+        return productService.findProductChanges(since, limit);
+    }
+
+    /**
+     * REST Request for recording a quantity update of a Product, such as a scanned item, without waiting for the
+     * DB to be updated.
+     * @param id The ID of the Product.
+     * @param delta The units to be added, negative to take them.
+     * @return OK once the update is recorded.
+     */
+    @PostMapping("/products/{id}/quantity-updates")
+    public ResponseEntity<ProductResponseRest> recordQuantityUpdate(@PathVariable Long id,
+                                                                    @RequestParam("delta") int delta) {
+        return productService.recordQuantityUpdate(id, delta);
+    }
+
+    /**
+     * REST Request for receiving the changes of the Products as they are committed (Server-Sent Events).
+     * Each "product" event holds the type of change, the ID, the quantity and the price of a Product.
+     * A client that falls behind is sent only the last change of each Product, or a "resync" event if too many
+     * Products changed meanwhile; it should then catch up with /products/changes.
+     * @return The stream of events, or 503 if too many clients are connected.
+     */
+    @GetMapping(value = "/products/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamProductChanges(){
+        return productEventBroadcaster.subscribe()
+                .map((emitter) -> ResponseEntity.ok(emitter))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
     }
 
     /**
@@ -89,12 +221,61 @@ public class ProductRestController {
     }
 
     /**
-     * REST Request for getting all the Products in the DB.
-     * @return All the Products in the DB.
+     * REST Request for getting the Products in the DB.
+     * Without parameters all the Products are returned. With "after" and/or "limit" a keyset page is returned,
+     * whose "nextCursor" is the value of "after" for the following page.
+     * @param after ID of the last Product of the previous page.
+     * @param limit Maximum number of Products of the page.
+     * Without inlinePictures the response carries an ETag, and a request whose If-None-Match matches it
+     * is answered with 304 Not Modified without reading the Products.
+     * @param inlinePictures True to embed the pictures in the response instead of only their URL.
+     * @param webRequest The request, used to answer conditional requests.
+     * @param response The response, where the caching headers are set.
+     * @return All the Products in the DB or a page of them.
      */
     @GetMapping("/products")
-    public ResponseEntity<ProductResponseRest> findProducts(){
-        return productService.findProducts();
+    public ResponseEntity<ProductResponseRest> findProducts(
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "inlinePictures", defaultValue = "false") boolean inlinePictures,
+            WebRequest webRequest, HttpServletResponse response){
+        // The pictures are not versioned with the Products, so responses embedding them are not validated.
+        if (!inlinePictures) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+            if (webRequest.checkNotModified(productService.findProductsETag())) {
+                return null;
+            }
+        }
+        if (after == null && limit == null) {
+            return productService.findProducts(inlinePictures);
+        }
+        return productService.findProductsPage(after, limit, inlinePictures);
+    }
+
+    /**
+     * REST Request for getting several Products by their IDs, for example the items of a cart.
+     * @param ids The IDs of the Products, separated by commas.
+     * @param inlinePictures True to embed the pictures in the response instead of only their URL.
+     * @return The Products found, in the order of the IDs. The IDs not found are listed in the metadata.
+     */
+    @GetMapping(value = "/products", params = "ids")
+    public ResponseEntity<ProductResponseRest> findProductsByIds(
+            @RequestParam("ids") List<Long> ids,
+            @RequestParam(value = "inlinePictures", defaultValue = "false") boolean inlinePictures){
+        return productService.findProductsByIds(ids, inlinePictures);
+    }
+
+    /**
+     * REST Request for getting several Products by their IDs, sent in the body for lists too long for a URL.
+     * @param ids The IDs of the Products, as a JSON array.
+     * @param inlinePictures True to embed the pictures in the response instead of only their URL.
+     * @return The Products found, in the order of the IDs. The IDs not found are listed in the metadata.
+     */
+    @PostMapping("/products/batch")
+    public ResponseEntity<ProductResponseRest> findProductsByIdsInBody(
+            @RequestBody List<Long> ids,
+            @RequestParam(value = "inlinePictures", defaultValue = "false") boolean inlinePictures){
+        return productService.findProductsByIds(ids, inlinePictures);
     }
 
     /**
@@ -121,11 +302,65 @@ public class ProductRestController {
         product.setName(name);
         product.setQuantity(quantity);
         product.setPrice(price);
-        product.setPicture(Util.compressZLib(picture.getBytes()));
+        product.setPicture(picture.getBytes());
 
         return productService.updateProduct(product, categoryID, id);
     }
 
+    /**
+     * REST Request for updating only some of the data of a Product, sent as multipart or URL encoded form data.
+     * The picture, the largest part, only has to be sent when it changes.
+     * @param picture The new picture of the Product, if it changes.
+     * @param name The new name of the Product, if it changes.
+     * @param price The new price of the Product, if it changes.
+     * @param quantity The new amount of the Product, if it changes.
+     * @param categoryID Foreign key of the new Category of the Product, if it changes.
+     * @param id The ID of the Product to be updated.
+     * @return The Product updated.
+     * @throws IOException
+     */
+    @PatchMapping("/products/{id}")
+    public ResponseEntity<ProductResponseRest> patchProduct(
+            @RequestParam(value = "picture", required = false) MultipartFile picture,
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "price", required = false) Integer price,
+            @RequestParam(value = "quantity", required = false) Integer quantity,
+            @RequestParam(value = "categoryId", required = false) Long categoryID,
+            @PathVariable Long id) throws IOException
+    {
+        byte[] pictureBytes = picture == null || picture.isEmpty() ? null : picture.getBytes();
+
+        return productService.patchProduct(id, name, price, quantity, categoryID, pictureBytes);
+    }
+
+    /**
+     * REST Request for changing the prices of all the Products of a Category, such as a seasonal +8%.
+     * It runs in the background: its progress is followed with the jobId returned.
+     * @param categoryID The ID of the Category.
+     * @param percent Percentage to be added to the prices, negative to lower them.
+     * @param amount Amount to be added to the prices instead, negative to lower them.
+     * @param dryRun True to only get how many Products would be changed.
+     * @return The adjustment started, or the count of a dry run.
+     */
+    @PostMapping("/products/price-adjustments")
+    public ResponseEntity<PriceAdjustmentResponseRest> adjustCategoryPrices(
+            @RequestParam("categoryId") Long categoryID,
+            @RequestParam(value = "percent", required = false) BigDecimal percent,
+            @RequestParam(value = "amount", required = false) Integer amount,
+            @RequestParam(value = "dryRun", defaultValue = "false") boolean dryRun){
+        return productService.adjustCategoryPrices(categoryID, percent, amount, dryRun);
+    }
+
+    /**
+     * REST Request for getting the progress of a price adjustment.
+     * @param jobId The jobId returned when the adjustment was started.
+     * @return The state of the adjustment.
+     */
+    @GetMapping("/products/price-adjustments/{jobId}")
+    public ResponseEntity<PriceAdjustmentResponseRest> findPriceAdjustment(@PathVariable String jobId){
+        return productService.findPriceAdjustment(jobId);
+    }
+
     /**
      * REST Request for exporting an EXCEL file with all the Products.
      * @param response
@@ -140,11 +375,21 @@ public class ProductRestController {
         String headerValue = "attachment; filename=result_product";
         response.setHeader(headerKey, headerValue);
 
-        ResponseEntity<ProductResponseRest> productsResponse = productService.findProducts();
-
-        ProductExcelExporter excelExporter = new ProductExcelExporter(
-                productsResponse.getBody().getProductResponse().getProductsList());
+        productService.exportProducts(response.getOutputStream());
+    }
 
-        excelExporter.export(response);
+    /**
+     * REST Request for importing Products from an EXCEL (.xlsx) or CSV file with the columns of the exported file.
+     * @param file The file with the Products to be imported.
+     * @return The number of Products imported and the rows rejected, with the reason.
+     * @throws IOException
+     */
+    @PostMapping("/products/import")
+    public ResponseEntity<ProductImportResponseRest> importProducts(@RequestParam("file") MultipartFile file)
+            throws IOException
+    {
+        try (InputStream inputStream = file.getInputStream()) {
+            return productImportService.importProducts(inputStream);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+package com.withnacho.bikestore.demo.controller;
+
+import com.withnacho.bikestore.demo.response.StockReservationResponseRest;
+import com.withnacho.bikestore.demo.service.IStockReservationService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@CrossOrigin(origins = {"http://localhost:4200"})
+@RestController
+@RequestMapping("/api/v1")
+public class StockReservationRestController {
+
+    private IStockReservationService stockReservationService;
+
+    public StockReservationRestController(IStockReservationService stockReservationService) {
+        super();
+        this.stockReservationService = stockReservationService;
+    }
+
+    /**
+     * REST Request for reserving units of a Product.
+     * @param productId The ID of the Product.
+     * @param quantity The number of units to be reserved.
+     * @param ttlSeconds Seconds the units are held if the reservation is neither committed nor released.
+     * @return The reservation, or 409 if the Product has not enough units.
+     */
+    @PostMapping("/products/{id}/reservations")
+    public ResponseEntity<StockReservationResponseRest> reserve(@PathVariable("id") Long productId,
+                                                                @RequestParam("quantity") int quantity,
+                                                                @RequestParam(value = "ttlSeconds", required = false) Long ttlSeconds) {
+        return stockReservationService.reserve(productId, quantity, ttlSeconds);
+    }
+
+    /**
+     * REST Request for releasing a reservation, giving its units back to the Product.
+     * @param id The ID of the reservation.
+     * @return The released reservation.
+     */
+    @PostMapping("/reservations/{id}/release")
+    public ResponseEntity<StockReservationResponseRest> release(@PathVariable String id) {
+        return stockReservationService.release(id);
+    }
+
+    /**
+     * REST Request for committing a reservation, keeping its units out of the Product.
+     * @param id The ID of the reservation.
+     * @return The committed reservation.
+     */
+    @PostMapping("/reservations/{id}/commit")
+    public ResponseEntity<StockReservationResponseRest> commit(@PathVariable String id) {
+        return stockReservationService.commit(id);
+    }
+
+}
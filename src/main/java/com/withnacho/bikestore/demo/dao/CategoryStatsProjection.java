@@ -0,0 +1,14 @@
+package com.withnacho.bikestore.demo.dao;
+
+/**
+ * Projection with the number of Products of a Category, their total units and the value of that stock
+ * (the sum of price * quantity).
+ */
+public interface CategoryStatsProjection {
+
+    Long getCategoryId();
+    long getProducts();
+    long getUnits();
+    long getStockValue();
+
+}
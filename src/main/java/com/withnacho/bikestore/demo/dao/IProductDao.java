@@ -1,9 +1,16 @@
 package com.withnacho.bikestore.demo.dao;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 import com.withnacho.bikestore.demo.entity.Product;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 
 public interface IProductDao extends CrudRepository<Product, Long>{
@@ -13,7 +20,83 @@ public interface IProductDao extends CrudRepository<Product, Long>{
     List<Product> findByNameLike(String name);
 
 
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     List<Product> findByNameContainingIgnoreCase(String name);
 
+    /**
+     * Same as findByNameContainingIgnoreCase, but the Category of each Product is read in the same query.
+     * @param name The text the name of the Products must contain.
+     * @return The Products found with their Category.
+     */
+    @EntityGraph(attributePaths = "category")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<Product> findWithCategoryByNameContainingIgnoreCase(String name);
 
-}
\ No newline at end of file
+    /**
+     * The Products with the given IDs and their Category, read in a single query.
+     * @param ids The IDs of the Products to be found.
+     * @return The Products found, in ID order.
+     */
+    @EntityGraph(attributePaths = "category")
+    List<Product> findWithCategoryByIdInOrderByIdAsc(Collection<Long> ids);
+
+    /**
+     * The ID and the name of all the Products, without any other column.
+     * @return The ID and name of every Product.
+     */
+    @Query("select p.id as id, p.name as name from Product p")
+    List<ProductNameProjection> findAllNames();
+
+    /**
+     * All the Products with their Category read in the same query, instead of one more query per Product.
+     * @return The Products in ID order.
+     */
+    @Query("select p from Product p left join fetch p.category order by p.id")
+    List<Product> findAllWithCategory();
+
+    /**
+     * Keyset page of Products: rows whose ID is greater than the given cursor, in ID order.
+     * Resolved through the primary key index, so its cost does not depend on how deep the page is.
+     * @param id The ID of the last Product of the previous page (cursor).
+     * @param pageable Only its page size is used, the offset must always be 0.
+     * @return The next Products after the cursor, with their Category.
+     */
+    @EntityGraph(attributePaths = "category")
+    List<Product> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    /**
+     * All the Products with their Category, read through a database cursor instead of being loaded at once.
+     * It must be consumed inside a transaction and closed afterwards.
+     * @return The Products in ID order.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select p from Product p left join fetch p.category order by p.id")
+    Stream<Product> streamAllWithCategory();
+
+    /**
+     * Aggregate that changes whenever a Product is saved, updated or deleted, without reading the Products.
+     * @return The number of Products, the sum of their versions and the highest ID.
+     */
+    @Query("select count(p) as count, coalesce(sum(p.version), 0) as versionSum, coalesce(max(p.id), 0) as maxId "
+            + "from Product p")
+    VersionAggregateProjection findVersionAggregate();
+
+    /**
+     * Aggregates the Products per Category in a single GROUP BY, without loading them.
+     * @return The number of Products, units and stock value of every Category with Products.
+     */
+    @Query("select p.category.id as categoryId, count(p) as products, coalesce(sum(p.quantity), 0) as units, "
+            + "coalesce(sum(cast(p.price as Long) * p.quantity), 0) as stockValue "
+            + "from Product p where p.category is not null group by p.category.id")
+    List<CategoryStatsProjection> findCategoryStats();
+
+    /**
+     * Products inserted or updated after a modification sequence number, resolved through the change_seq index.
+     * @param changeSeq The sequence number already synchronized by the client.
+     * @param pageable Only its page size is used, the offset must always be 0.
+     * @return The following changed Products with their Category, in sequence order.
+     */
+    @EntityGraph(attributePaths = "category")
+    List<Product> findWithCategoryByChangeSeqGreaterThanOrderByChangeSeqAsc(long changeSeq, Pageable pageable);
+
+}
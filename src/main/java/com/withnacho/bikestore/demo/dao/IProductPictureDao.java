@@ -0,0 +1,26 @@
+package com.withnacho.bikestore.demo.dao;
+
+import com.withnacho.bikestore.demo.entity.PictureCodec;
+import com.withnacho.bikestore.demo.entity.ProductPicture;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+public interface IProductPictureDao extends CrudRepository<ProductPicture, Long> {
+
+
+    @Modifying
+    @Query("delete from ProductPicture pp where pp.productId = ?1")
+    int deleteByProductId(Long productId);
+
+    /**
+     * Replaces the picture of a Product without reading the old one first, as save (merge) would.
+     * @return The number of pictures updated: 0 if the Product had no picture.
+     */
+    @Modifying
+    @Query("update ProductPicture pp set pp.contentType = ?2, pp.size = ?3, pp.checksum = ?4, pp.codec = ?5, "
+            + "pp.data = ?6 where pp.productId = ?1")
+    int updatePicture(Long productId, String contentType, int size, long checksum, PictureCodec codec, byte[] data);
+
+
+}
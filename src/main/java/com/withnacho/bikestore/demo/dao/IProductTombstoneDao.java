@@ -0,0 +1,19 @@
+package com.withnacho.bikestore.demo.dao;
+
+import java.util.List;
+
+import com.withnacho.bikestore.demo.entity.ProductTombstone;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.CrudRepository;
+
+public interface IProductTombstoneDao extends CrudRepository<ProductTombstone, Long> {
+
+    /**
+     * Deletions after a modification sequence number, resolved through the change_seq index.
+     * @param changeSeq The sequence number already synchronized by the client.
+     * @param pageable Only its page size is used, the offset must always be 0.
+     * @return The following deletions, in sequence order.
+     */
+    List<ProductTombstone> findByChangeSeqGreaterThanOrderByChangeSeqAsc(long changeSeq, Pageable pageable);
+
+}
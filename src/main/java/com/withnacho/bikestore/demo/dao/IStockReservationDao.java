@@ -0,0 +1,36 @@
+package com.withnacho.bikestore.demo.dao;
+
+import java.time.Instant;
+import java.util.List;
+
+import com.withnacho.bikestore.demo.entity.ReservationStatus;
+import com.withnacho.bikestore.demo.entity.StockReservation;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+public interface IStockReservationDao extends CrudRepository<StockReservation, String> {
+
+    /**
+     * Moves a reservation out of RESERVED. Only one of several concurrent calls for the same reservation succeeds.
+     * @param id The ID of the reservation.
+     * @param status The new status.
+     * @return 1 if the reservation was RESERVED and has been changed, 0 otherwise.
+     */
+    @Modifying
+    @Query("update StockReservation r set r.status = ?2 where r.id = ?1 "
+            + "and r.status = com.withnacho.bikestore.demo.entity.ReservationStatus.RESERVED")
+    int finish(String id, ReservationStatus status);
+
+    /**
+     * Reservations still holding stock after their expiry, resolved through the (status, expires_at) index.
+     * @param now The current time.
+     * @param pageable Only its page size is used, the offset must always be 0.
+     * @return The expired reservations.
+     */
+    @Query("select r from StockReservation r "
+            + "where r.status = com.withnacho.bikestore.demo.entity.ReservationStatus.RESERVED and r.expiresAt < ?1")
+    List<StockReservation> findExpired(Instant now, Pageable pageable);
+
+}
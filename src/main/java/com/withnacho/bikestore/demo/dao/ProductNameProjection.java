@@ -0,0 +1,11 @@
+package com.withnacho.bikestore.demo.dao;
+
+/**
+ * Projection with only the ID and the name of a Product, used to build the in-memory name indexes.
+ */
+public interface ProductNameProjection {
+
+    Long getId();
+    String getName();
+
+}
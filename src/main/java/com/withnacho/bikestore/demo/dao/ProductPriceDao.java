@@ -0,0 +1,125 @@
+package com.withnacho.bikestore.demo.dao;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import com.withnacho.bikestore.demo.event.ProductSnapshot;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Set-based changes of the prices of the Products of a Category, in SQL: the Products and their pictures are never
+ * loaded. The Products are processed in chunks of consecutive IDs, each chunk being the IDs after the previous
+ * chunk and up to its last ID. Every change also increments the version and sets the modification sequence number,
+ * like an update through the entity. They must be called inside a transaction.
+ */
+@Repository
+public class ProductPriceDao {
+
+    private static final RowMapper<ProductSnapshot> SNAPSHOT = (rs, rowNum) -> new ProductSnapshot(rs.getLong("id"),
+            rs.getString("name"), rs.getInt("price"), rs.getInt("quantity"), rs.getObject("category_id", Long.class));
+
+    private JdbcTemplate jdbcTemplate;
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public ProductPriceDao(JdbcTemplate jdbcTemplate) {
+        super();
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    /**
+     * @return The number of Products of the Category.
+     */
+    public long countByCategory(Long categoryId) {
+        return jdbcTemplate.queryForObject("select count(*) from product where category_id = ?", Long.class, categoryId);
+    }
+
+    /**
+     * Finds where the next chunk ends.
+     * @param categoryId The ID of the Category.
+     * @param afterId The last ID of the previous chunk.
+     * @param size The maximum number of Products of the chunk.
+     * @return The last ID of the chunk, or null if there are no more Products.
+     */
+    public Long findChunkEnd(Long categoryId, long afterId, int size) {
+        List<Long> end = jdbcTemplate.queryForList("select id from product where category_id = ? and id > ? "
+                + "order by id limit 1 offset ?", Long.class, categoryId, afterId, size - 1);
+        if (!end.isEmpty()) {
+            return end.get(0);
+        }
+        return jdbcTemplate.queryForObject("select max(id) from product where category_id = ? and id > ?",
+                Long.class, categoryId, afterId);
+    }
+
+    /**
+     * Reads the Products of a chunk, locking them until the end of the transaction.
+     * @return The Products of the chunk, in ID order.
+     */
+    public List<ProductSnapshot> lockChunk(Long categoryId, long afterId, long upToId) {
+        return jdbcTemplate.query("select id, name, price, quantity, category_id from product "
+                + "where category_id = ? and id > ? and id <= ? order by id for update", SNAPSHOT, categoryId, afterId, upToId);
+    }
+
+    /**
+     * @return The given Products, in ID order.
+     */
+    public List<ProductSnapshot> findByIds(List<Long> productIds) {
+        return namedParameterJdbcTemplate.query("select id, name, price, quantity, category_id from product "
+                + "where id in (:ids) order by id", new MapSqlParameterSource("ids", productIds), SNAPSHOT);
+    }
+
+    /**
+     * Multiplies the prices of the given Products of a chunk by a factor, rounding them, with a minimum of 0.
+     * Only the Products locked by lockChunk are given, so rows that entered the chunk afterwards are left alone.
+     * The n-th given Product gets the sequence number firstSeq + n - 1, so a block of as many numbers as Products
+     * must have been taken.
+     * @return The number of Products changed.
+     */
+    public int multiplyPrices(List<Long> productIds, BigDecimal factor, long firstSeq, Instant now) {
+        MapSqlParameterSource parameters = changeParameters(productIds, now).addValue("factor", factor);
+        return namedParameterJdbcTemplate.update("update product set "
+                + "price = greatest(0, round(price * cast(:factor as decimal(12, 6)))), version = version + 1, "
+                + "change_seq = " + numbering(productIds, firstSeq, parameters) + ", updated_at = :now "
+                + "where id in (:ids)", parameters);
+    }
+
+    /**
+     * Adds an amount to the prices of the given Products of a chunk, with a minimum of 0. The Products and their
+     * sequence numbers are given as in multiplyPrices.
+     * @return The number of Products changed.
+     */
+    public int addToPrices(List<Long> productIds, int amount, long firstSeq, Instant now) {
+        MapSqlParameterSource parameters = changeParameters(productIds, now).addValue("amount", amount);
+        return namedParameterJdbcTemplate.update("update product set price = greatest(0, price + :amount), "
+                + "version = version + 1, change_seq = " + numbering(productIds, firstSeq, parameters) + ", "
+                + "updated_at = :now where id in (:ids)", parameters);
+    }
+
+    private static MapSqlParameterSource changeParameters(List<Long> productIds, Instant now) {
+        return new MapSqlParameterSource("ids", productIds)
+                .addValue("now", utc(now));
+    }
+
+    // The sequence number of each Product by its position in the list, so sparse IDs do not waste numbers.
+    private static String numbering(List<Long> productIds, long firstSeq, MapSqlParameterSource parameters) {
+        StringBuilder numbering = new StringBuilder("case id");
+        for (int i = 0; i < productIds.size(); i++) {
+            numbering.append(" when :id").append(i).append(" then :seq").append(i);
+            parameters.addValue("id" + i, productIds.get(i)).addValue("seq" + i, firstSeq + i);
+        }
+        return numbering.append(" end").toString();
+    }
+
+    // Instants are stored in UTC, as Hibernate does.
+    private static OffsetDateTime utc(Instant instant) {
+        return instant.atOffset(ZoneOffset.UTC);
+    }
+
+}
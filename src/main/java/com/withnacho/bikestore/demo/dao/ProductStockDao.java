@@ -0,0 +1,95 @@
+package com.withnacho.bikestore.demo.dao;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+
+import com.withnacho.bikestore.demo.entity.StockReservation;
+import com.withnacho.bikestore.demo.event.ProductSnapshot;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Atomic changes of Product.quantity, written in SQL instead of HQL: a bulk HQL update would drop every Product from
+ * the second-level cache, while the callers only evict the Products they change. Every change also increments the
+ * version and sets the modification sequence number, like an update through the entity.
+ * They must be called inside a transaction.
+ */
+@Repository
+public class ProductStockDao {
+
+    private static final String SET_CHANGED = "version = version + 1, change_seq = ?, updated_at = ?";
+
+    private JdbcTemplate jdbcTemplate;
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public ProductStockDao(JdbcTemplate jdbcTemplate) {
+        super();
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    /**
+     * Takes units from a Product only if it has enough of them.
+     * @return True if the units were taken, false if the Product does not exist or has not enough units.
+     */
+    public boolean decrementIfAvailable(Long productId, int amount, long changeSeq, Instant now) {
+        return jdbcTemplate.update("update product set quantity = quantity - ?, " + SET_CHANGED
+                + " where id = ? and quantity >= ?", amount, changeSeq, utc(now), productId, amount) == 1;
+    }
+
+    /**
+     * Adds units to (or takes units from, if negative) a Product, unconditionally.
+     * @return True if the Product exists.
+     */
+    public boolean adjust(Long productId, int delta, long changeSeq, Instant now) {
+        return jdbcTemplate.update("update product set quantity = quantity + ?, " + SET_CHANGED + " where id = ?",
+                delta, changeSeq, utc(now), productId) == 1;
+    }
+
+    /**
+     * Reads the quantity of a Product and locks its row until the end of the transaction.
+     * @return The quantity, or null if the Product does not exist.
+     */
+    public Integer lockQuantity(Long productId) {
+        List<Integer> quantity = jdbcTemplate.queryForList(
+                "select quantity from product where id = ? for update", Integer.class, productId);
+        return quantity.isEmpty() ? null : quantity.get(0);
+    }
+
+    /**
+     * @return The current data of the given Products, for the change events.
+     */
+    public List<ProductSnapshot> findSnapshots(Collection<Long> productIds) {
+        return namedParameterJdbcTemplate.query(
+                "select id, name, price, quantity, category_id from product where id in (:ids)",
+                new MapSqlParameterSource("ids", productIds),
+                (rs, rowNum) -> new ProductSnapshot(rs.getLong("id"), rs.getString("name"), rs.getInt("price"),
+                        rs.getInt("quantity"), rs.getObject("category_id", Long.class)));
+    }
+
+    /**
+     * Inserts new reservations in a single JDBC batch.
+     */
+    public void insertReservations(List<StockReservation> reservations) {
+        jdbcTemplate.batchUpdate("insert into stock_reservation (id, product_id, quantity, status, created_at, expires_at) "
+                        + "values (?, ?, ?, ?, ?, ?)", reservations, reservations.size(), (ps, reservation) -> {
+            ps.setString(1, reservation.getId());
+            ps.setLong(2, reservation.getProductId());
+            ps.setInt(3, reservation.getQuantity());
+            ps.setString(4, reservation.getStatus().name());
+            ps.setObject(5, utc(reservation.getCreatedAt()));
+            ps.setObject(6, utc(reservation.getExpiresAt()));
+        });
+    }
+
+    // Instants are stored in UTC, as Hibernate does.
+    private static OffsetDateTime utc(Instant instant) {
+        return instant.atOffset(ZoneOffset.UTC);
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.withnacho.bikestore.demo.dao;
+
+/**
+ * Projection with the number of rows of a table, the sum of their versions and the highest ID. Together they change
+ * on every insert, update or delete, so they identify the version of the whole table.
+ */
+public interface VersionAggregateProjection {
+
+    long getCount();
+    long getVersionSum();
+    long getMaxId();
+
+}
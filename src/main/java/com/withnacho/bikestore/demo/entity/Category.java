@@ -3,8 +3,12 @@ package com.withnacho.bikestore.demo.entity;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import java.io.Serializable;
+import java.time.Instant;
 import java.util.Objects;
 
 @Getter
@@ -12,6 +16,8 @@ import java.util.Objects;
 @ToString
 @RequiredArgsConstructor
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name="category")
 public class Category implements Serializable{
 
@@ -26,6 +32,15 @@ public class Category implements Serializable{
     private String name;
     private String description;
 
+    /**
+     * Incremented on every update, it is part of the ETag of the Category and of its Products.
+     */
+    @Version
+    private long version;
+
+    @UpdateTimestamp
+    private Instant updatedAt;
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
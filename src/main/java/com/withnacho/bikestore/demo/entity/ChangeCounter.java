@@ -0,0 +1,47 @@
+package com.withnacho.bikestore.demo.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.Hibernate;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Last modification sequence number handed out for a table. The row is locked by every write until it commits,
+ * so the numbers become visible in the same order they are handed out.
+ * @see com.withnacho.bikestore.demo.service.ProductChangeSequence
+ */
+@Getter
+@Setter
+@ToString
+@RequiredArgsConstructor
+@Entity
+@Table(name="change_counter")
+public class ChangeCounter implements Serializable {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 5012664711542836125L;
+
+    @Id
+    @Column(name = "name", length = 64)
+    private String name;
+
+    @Column(name = "last_seq")
+    private long lastSeq;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        ChangeCounter changeCounter = (ChangeCounter) o;
+        return name != null && Objects.equals(name, changeCounter.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
@@ -0,0 +1,18 @@
+package com.withnacho.bikestore.demo.entity;
+
+/**
+ * How the bytes of a ProductPicture are stored.
+ */
+public enum PictureCodec {
+
+    /**
+     * Stored as received, for formats that are already compressed (JPEG, PNG, GIF, WebP).
+     */
+    RAW,
+
+    /**
+     * Compressed with zlib. Pictures stored before the codec column existed have no codec and are zlib too.
+     */
+    ZLIB
+
+}
@@ -1,11 +1,20 @@
 package com.withnacho.bikestore.demo.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.OptimisticLock;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import java.io.Serializable;
+import java.time.Instant;
 import java.util.Objects;
 
 @Getter
@@ -13,7 +22,11 @@ import java.util.Objects;
 @ToString
 @RequiredArgsConstructor
 @Entity
-@Table(name="product")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+// The UPDATEs only set the columns that changed, as most updates change one or two of them.
+@DynamicUpdate
+@Table(name="product", indexes = @Index(name = "idx_product_change_seq", columnList = "change_seq"))
 public class Product implements Serializable {
 
     /**
@@ -21,8 +34,17 @@ public class Product implements Serializable {
      */
     private static final long serialVersionUID = -7461389651533509262L;
 
+    /**
+     * IDs reserved at once from the id_generator table. Unlike an IDENTITY column, the IDs are known before the
+     * INSERT, so Hibernate can send the inserts in JDBC batches.
+     * @see com.withnacho.bikestore.demo.migration.ProductIdSeed
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "product_id")
+    @TableGenerator(name = "product_id", table = "id_generator", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "product", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     private String name;
@@ -31,17 +53,48 @@ public class Product implements Serializable {
 
     private int quantity;
 
+    /**
+     * Incremented on every update. It protects the updates against lost updates (optimistic locking)
+     * and it is part of the ETag of the Product.
+     */
+    @Version
+    private long version;
+
+    @UpdateTimestamp
+    private Instant updatedAt;
+
+    /**
+     * Modification sequence number of the last insert or update, handed out by ProductChangeSequence.
+     * It orders the change feed of GET /api/v1/products/changes. Setting it alone does not change the version.
+     */
+    @Column(name = "change_seq")
+    @OptimisticLock(excluded = true)
+    @JsonIgnore
+    private long changeSeq;
+
     @ManyToOne(fetch= FetchType.LAZY)
     @JsonIgnoreProperties ( {"hibernateLazyInitializer", "handler"})
     @ToString.Exclude
     private Category category;
 
-    @Lob
-    @Basic(fetch = FetchType.LAZY)
-    @Column( name ="picture")
+    /**
+     * Original picture received with a save or an update, or embedded in a response when requested with
+     * inlinePictures. It is not mapped: pictures are stored by ProductPictureServiceImpl in their own table,
+     * so loading Products never reads them.
+     */
+    @Transient
     @ToString.Exclude
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private byte[] picture;
 
+    /**
+     * The picture is not embedded in the JSON responses, it is served by GET /api/v1/products/{id}/picture.
+     * @return The URL of the picture of the Product.
+     */
+    @JsonProperty("pictureUrl")
+    public String getPictureUrl() {
+        return id == null ? null : "/api/v1/products/" + id + "/picture";
+    }
 
     @Override
     public boolean equals(Object o) {
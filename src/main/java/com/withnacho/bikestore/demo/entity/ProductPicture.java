@@ -0,0 +1,67 @@
+package com.withnacho.bikestore.demo.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.Hibernate;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Picture of a Product, kept in its own table so the queries on Products never read the picture bytes.
+ */
+@Getter
+@Setter
+@ToString
+@RequiredArgsConstructor
+@Entity
+@Table(name="product_picture")
+public class ProductPicture implements Serializable {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 3186250741163590718L;
+
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    /**
+     * Size in bytes of the original (decompressed) picture.
+     */
+    private int size;
+
+    /**
+     * CRC32 of the original (decompressed) picture, used as its ETag.
+     */
+    private long checksum;
+
+    /**
+     * How data is stored. Null for the pictures stored before this column existed, which are zlib.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "codec", length = 8)
+    private PictureCodec codec;
+
+    @Lob
+    @Column(name = "data")
+    @ToString.Exclude
+    private byte[] data;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        ProductPicture productPicture = (ProductPicture) o;
+        return productId != null && Objects.equals(productId, productPicture.productId);
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
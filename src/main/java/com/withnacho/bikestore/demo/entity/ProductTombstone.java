@@ -0,0 +1,52 @@
+package com.withnacho.bikestore.demo.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.Hibernate;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Record of a deleted Product, so the change feed can tell the clients to remove it.
+ */
+@Getter
+@Setter
+@ToString
+@RequiredArgsConstructor
+@Entity
+@Table(name="product_tombstone", indexes = @Index(name = "idx_product_tombstone_change_seq", columnList = "change_seq"))
+public class ProductTombstone implements Serializable {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -2236407853714452210L;
+
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    /**
+     * Modification sequence number of the deletion.
+     */
+    @Column(name = "change_seq")
+    private long changeSeq;
+
+    @Column(name = "deleted_at")
+    private Instant deletedAt;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        ProductTombstone productTombstone = (ProductTombstone) o;
+        return productId != null && Objects.equals(productId, productTombstone.productId);
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
@@ -0,0 +1,11 @@
+package com.withnacho.bikestore.demo.entity;
+
+/**
+ * State of a StockReservation. Only RESERVED reservations hold stock; the others are final.
+ */
+public enum ReservationStatus {
+    RESERVED,
+    COMMITTED,
+    RELEASED,
+    EXPIRED
+}
@@ -0,0 +1,59 @@
+package com.withnacho.bikestore.demo.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.Hibernate;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Units of a Product set aside for a checkout. They are taken from Product.quantity when reserved, given back when
+ * released (or when the reservation expires) and kept when committed.
+ */
+@Getter
+@Setter
+@ToString
+@RequiredArgsConstructor
+@Entity
+@Table(name="stock_reservation", indexes = @Index(name = "idx_stock_reservation_expiry", columnList = "status, expires_at"))
+public class StockReservation implements Serializable {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 8123018573093616307L;
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Column(name = "product_id")
+    private Long productId;
+
+    private int quantity;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 16)
+    private ReservationStatus status;
+
+    @Column(name = "created_at")
+    private Instant createdAt;
+
+    @Column(name = "expires_at")
+    private Instant expiresAt;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        StockReservation stockReservation = (StockReservation) o;
+        return id != null && Objects.equals(id, stockReservation.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
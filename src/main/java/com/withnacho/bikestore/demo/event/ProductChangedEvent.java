@@ -0,0 +1,46 @@
+package com.withnacho.bikestore.demo.event;
+
+import java.util.Objects;
+
+/**
+ * Event published by ProductServiceImpl whenever a Product is created, updated or deleted. Listeners that keep
+ * in-memory views of the Products should use @TransactionalEventListener, so they only see committed changes.
+ * @param type What happened to the Product.
+ * @param before The Product before the change, or null if it was created.
+ * @param after The Product after the change, or null if it was deleted.
+ */
+public record ProductChangedEvent(Type type, ProductSnapshot before, ProductSnapshot after) {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    public static ProductChangedEvent created(ProductSnapshot after) {
+        return new ProductChangedEvent(Type.CREATED, null, after);
+    }
+
+    public static ProductChangedEvent updated(ProductSnapshot before, ProductSnapshot after) {
+        return new ProductChangedEvent(Type.UPDATED, before, after);
+    }
+
+    public static ProductChangedEvent deleted(ProductSnapshot before) {
+        return new ProductChangedEvent(Type.DELETED, before, null);
+    }
+
+    /**
+     * @return False if the Product was updated without changing its name, as with stock changes.
+     */
+    public boolean changesName() {
+        return before == null || after == null || !Objects.equals(before.name(), after.name());
+    }
+
+    /**
+     * @return The ID of the Product that changed.
+     */
+    public Long productId() {
+        return after != null ? after.id() : before.id();
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.withnacho.bikestore.demo.event;
+
+import com.withnacho.bikestore.demo.entity.Product;
+
+/**
+ * Immutable copy of the scalar data of a Product at a given moment, safe to be read after the transaction ends.
+ */
+public record ProductSnapshot(Long id, String name, int price, int quantity, Long categoryId) {
+
+    public static ProductSnapshot of(Product product) {
+        return new ProductSnapshot(product.getId(), product.getName(), product.getPrice(), product.getQuantity(),
+                product.getCategory() == null ? null : product.getCategory().getId());
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.withnacho.bikestore.demo.event;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Compact change of a Product pushed to the clients of GET /api/v1/products/stream.
+ * @param type CREATED, UPDATED or DELETED.
+ * @param id The ID of the Product.
+ * @param quantity The quantity after the change, absent if the Product was deleted.
+ * @param price The price after the change, absent if the Product was deleted.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ProductStockChange(ProductChangedEvent.Type type, Long id, Integer quantity, Integer price) {
+
+    public static ProductStockChange of(ProductChangedEvent event) {
+        ProductSnapshot after = event.after();
+        return after == null ? new ProductStockChange(event.type(), event.productId(), null, null)
+                : new ProductStockChange(event.type(), after.id(), after.quantity(), after.price());
+    }
+
+}
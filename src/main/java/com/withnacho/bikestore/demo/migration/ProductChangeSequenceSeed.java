@@ -0,0 +1,50 @@
+package com.withnacho.bikestore.demo.migration;
+
+import com.withnacho.bikestore.demo.service.ProductChangeSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This class creates the change_counter row of the Products the first time the application starts with the change
+ * feed. The Products that existed before have no sequence number yet (0), so they are numbered by ID first and
+ * the counter starts after them. It runs before the server accepts requests, and does nothing once the row exists.
+ */
+@Component
+public class ProductChangeSequenceSeed implements SmartInitializingSingleton {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProductChangeSequenceSeed.class);
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    public ProductChangeSequenceSeed(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        super();
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        transactionTemplate.executeWithoutResult((status) -> {
+            Integer rows = jdbcTemplate.queryForObject("select count(*) from change_counter where name = ?",
+                    Integer.class, ProductChangeSequence.COUNTER_NAME);
+            if (rows > 0) {
+                return;
+            }
+
+            int numbered = jdbcTemplate.update("update product set change_seq = id where change_seq = 0");
+            long lastSeq = jdbcTemplate.queryForObject("select coalesce(max(change_seq), 0) from product", Long.class);
+            jdbcTemplate.update("insert into change_counter (name, last_seq) values (?, ?)",
+                    ProductChangeSequence.COUNTER_NAME, lastSeq);
+
+            if (numbered > 0) {
+                LOGGER.info("Numbered {} existing products for the change feed", numbered);
+            }
+        });
+    }
+
+}
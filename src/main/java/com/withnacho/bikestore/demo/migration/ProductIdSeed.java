@@ -0,0 +1,53 @@
+package com.withnacho.bikestore.demo.migration;
+
+import com.withnacho.bikestore.demo.entity.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This class keeps the id_generator row of the Products ahead of the IDs already in the product table, which were
+ * generated by an AUTO_INCREMENT column before. It runs once all the beans are created, so before the server accepts
+ * requests, and it does nothing when the row is already ahead.
+ */
+@Component
+public class ProductIdSeed implements SmartInitializingSingleton {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProductIdSeed.class);
+
+    private static final String SEQUENCE_NAME = "product";
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    public ProductIdSeed(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        super();
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        transactionTemplate.executeWithoutResult((status) -> {
+            long maxId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from product", Long.class);
+            // Hibernate hands out the block of IDs that ends at the stored value, so it must start above maxId.
+            long nextValue = maxId + Product.ID_ALLOCATION_SIZE;
+
+            Integer rows = jdbcTemplate.queryForObject(
+                    "select count(*) from id_generator where sequence_name = ?", Integer.class, SEQUENCE_NAME);
+
+            if (rows == 0) {
+                jdbcTemplate.update("insert into id_generator (sequence_name, next_val) values (?, ?)",
+                        SEQUENCE_NAME, nextValue);
+                LOGGER.info("Product IDs will continue after {}", maxId);
+            } else if (jdbcTemplate.update("update id_generator set next_val = ? where sequence_name = ? and next_val < ?",
+                    nextValue, SEQUENCE_NAME, nextValue) > 0) {
+                LOGGER.info("Product IDs moved past {}", maxId);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.withnacho.bikestore.demo.migration;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.withnacho.bikestore.demo.entity.PictureCodec;
+import com.withnacho.bikestore.demo.util.PictureFormat;
+import com.withnacho.bikestore.demo.util.ZLibCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This class moves the pictures stored in the legacy product.picture column to the product_picture table.
+ * It runs once all the beans are created, so before the server accepts requests, in small batches, and it does
+ * nothing once the legacy column is empty. A picture that cannot be decompressed is logged and left in the column,
+ * to be fixed by hand. After the migration the column can be dropped by hand: ALTER TABLE product DROP COLUMN picture.
+ */
+@Component
+@ConditionalOnProperty(name = "bikestore.picture.migrate-legacy", havingValue = "true", matchIfMissing = true)
+public class ProductPictureMigration implements SmartInitializingSingleton {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProductPictureMigration.class);
+
+    private static final int BATCH_SIZE = 50;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private ZLibCodec zLibCodec;
+
+    public ProductPictureMigration(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                   ZLibCodec zLibCodec) {
+        super();
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.zLibCodec = zLibCodec;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+
+        if (!legacyColumnExists()) {
+            return;
+        }
+
+        int migrated = 0;
+        int skipped = 0;
+        long lastId = 0L;
+
+        while (true) {
+            long cursor = lastId;
+            List<Long> ids = jdbcTemplate.queryForList(
+                    "select id from product where picture is not null and id > ? order by id limit " + BATCH_SIZE,
+                    Long.class, cursor);
+
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            int batchMigrated = transactionTemplate.execute(
+                    (status) -> (int) ids.stream().filter(this::migratePicture).count());
+            migrated += batchMigrated;
+            skipped += ids.size() - batchMigrated;
+            lastId = ids.get(ids.size() - 1);
+        }
+
+        if (migrated > 0) {
+            LOGGER.info("Moved {} product pictures to the product_picture table", migrated);
+        }
+        if (skipped > 0) {
+            LOGGER.warn("Left {} product pictures that could not be decompressed in the product.picture column",
+                    skipped);
+        }
+    }
+
+    // Returns false if the picture could not be decompressed, leaving it where it is.
+    private boolean migratePicture(Long id) {
+        byte[] compressed = jdbcTemplate.queryForObject("select picture from product where id = ?", byte[].class, id);
+        Integer existing = jdbcTemplate.queryForObject(
+                "select count(*) from product_picture where product_id = ?", Integer.class, id);
+
+        if (compressed != null && existing == 0) {
+            byte[] picture;
+            try {
+                picture = zLibCodec.decompress(compressed, -1);
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Could not decompress the legacy picture of product {}", id, e);
+                return false;
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(picture);
+
+            jdbcTemplate.update(
+                    "insert into product_picture (product_id, content_type, size, checksum, codec, data) "
+                            + "values (?, ?, ?, ?, ?, ?)",
+                    id, PictureFormat.sniff(picture, picture.length).getContentType(), picture.length,
+                    checksum.getValue(), PictureCodec.ZLIB.name(), compressed);
+        }
+
+        jdbcTemplate.update("update product set picture = null where id = ?", id);
+        return true;
+    }
+
+    private boolean legacyColumnExists() {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((Connection connection) -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String table = metaData.storesUpperCaseIdentifiers() ? "PRODUCT" : "product";
+            String column = metaData.storesUpperCaseIdentifiers() ? "PICTURE" : "picture";
+
+            try (ResultSet columns = metaData.getColumns(connection.getCatalog(), null, table, column)) {
+                return columns.next();
+            }
+        }));
+    }
+
+}
@@ -0,0 +1,7 @@
+package com.withnacho.bikestore.demo.response;
+
+/**
+ * Aggregates of the Products of a Category: how many there are, their total units and the value of that stock.
+ */
+public record CategoryStats(Long categoryId, String name, long products, long units, long stockValue) {
+}
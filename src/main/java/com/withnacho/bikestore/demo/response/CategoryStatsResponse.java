@@ -0,0 +1,16 @@
+package com.withnacho.bikestore.demo.response;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Class containing a list of CategoryStats to be used by CategoryStatsResponseRest.java to set the metadata of certain queries.
+ * @see CategoryStatsResponseRest
+ */
+@Data
+public class CategoryStatsResponse {
+
+    private List<CategoryStats> statsList;
+
+}
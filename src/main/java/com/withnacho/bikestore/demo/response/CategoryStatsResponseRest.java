@@ -0,0 +1,17 @@
+package com.withnacho.bikestore.demo.response;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Class that instantiates a CategoryStatsResponse and inherits from ResponseRest to set the metadata of certain queries.
+ * @see CategoryStatsResponse
+ * @see ResponseRest
+ */
+@Getter
+@Setter
+public class CategoryStatsResponseRest extends ResponseRest{
+
+    private CategoryStatsResponse categoryStatsResponse = new CategoryStatsResponse();
+
+}
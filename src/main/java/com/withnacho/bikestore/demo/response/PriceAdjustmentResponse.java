@@ -0,0 +1,55 @@
+package com.withnacho.bikestore.demo.response;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * Class containing the state of a price adjustment of a Category to be used by PriceAdjustmentResponseRest.java to set the metadata of certain queries.
+ * @see PriceAdjustmentResponseRest
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PriceAdjustmentResponse {
+
+    /**
+     * ID to follow the progress of the adjustment, null for a dry run.
+     */
+    private String jobId;
+
+    private Long categoryId;
+
+    /**
+     * Percentage added to the prices, if the adjustment is a percentage.
+     */
+    private BigDecimal percent;
+
+    /**
+     * Amount added to the prices, if the adjustment is an amount.
+     */
+    private Integer amount;
+
+    private boolean dryRun;
+
+    /**
+     * RUNNING, COMPLETED or FAILED, null for a dry run.
+     */
+    private String status;
+
+    /**
+     * Products of the Category when the adjustment started.
+     */
+    private long total;
+
+    /**
+     * Products already adjusted.
+     */
+    private long processed;
+
+    private Instant startedAt;
+
+    private Instant finishedAt;
+
+}
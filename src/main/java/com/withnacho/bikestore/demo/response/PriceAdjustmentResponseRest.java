@@ -0,0 +1,17 @@
+package com.withnacho.bikestore.demo.response;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Class that instantiates a PriceAdjustmentResponse and inherits from ResponseRest to set the metadata of certain queries.
+ * @see PriceAdjustmentResponse
+ * @see ResponseRest
+ */
+@Getter
+@Setter
+public class PriceAdjustmentResponseRest extends ResponseRest{
+
+    private PriceAdjustmentResponse priceAdjustmentResponse = new PriceAdjustmentResponse();
+
+}
@@ -0,0 +1,36 @@
+package com.withnacho.bikestore.demo.response;
+
+import java.util.List;
+
+import com.withnacho.bikestore.demo.entity.Product;
+import com.withnacho.bikestore.demo.entity.ProductTombstone;
+import lombok.Data;
+
+/**
+ * Class containing the Products changed since a token to be used by ProductChangesResponseRest.java to set the metadata of certain queries.
+ * @see ProductChangesResponseRest
+ */
+@Data
+public class ProductChangesResponse {
+
+    /**
+     * Products inserted or updated, with their current data.
+     */
+    private List<Product> productsList;
+
+    /**
+     * Products deleted.
+     */
+    private List<ProductTombstone> deletedList;
+
+    /**
+     * Token to be sent back as "since" to get the following changes.
+     */
+    private long nextToken;
+
+    /**
+     * True if there are more changes after nextToken, which can be requested right away.
+     */
+    private boolean hasMore;
+
+}
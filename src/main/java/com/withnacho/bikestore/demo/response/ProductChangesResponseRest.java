@@ -0,0 +1,17 @@
+package com.withnacho.bikestore.demo.response;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Class that instantiates a ProductChangesResponse and inherits from ResponseRest to set the metadata of certain queries.
+ * @see ProductChangesResponse
+ * @see ResponseRest
+ */
+@Getter
+@Setter
+public class ProductChangesResponseRest extends ResponseRest{
+
+    private ProductChangesResponse productChangesResponse = new ProductChangesResponse();
+
+}
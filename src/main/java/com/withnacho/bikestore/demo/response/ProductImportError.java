@@ -0,0 +1,7 @@
+package com.withnacho.bikestore.demo.response;
+
+/**
+ * A row of an imported file that was not saved, with the reason.
+ */
+public record ProductImportError(int row, String message) {
+}
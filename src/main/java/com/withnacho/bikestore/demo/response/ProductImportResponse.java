@@ -0,0 +1,20 @@
+package com.withnacho.bikestore.demo.response;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Class containing the result of a Product import to be used by ProductImportResponseRest.java to set the metadata of certain queries.
+ * Only the first rejected rows are listed in errorsList; rejectedCount counts all of them.
+ * @see ProductImportResponseRest
+ */
+@Data
+public class ProductImportResponse {
+
+    private int importedCount;
+    private int rejectedCount;
+    private List<ProductImportError> errorsList = new ArrayList<>();
+
+}
@@ -0,0 +1,17 @@
+package com.withnacho.bikestore.demo.response;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Class that instantiates a ProductImportResponse and inherits from ResponseRest to set the metadata of certain queries.
+ * @see ProductImportResponse
+ * @see ResponseRest
+ */
+@Getter
+@Setter
+public class ProductImportResponseRest extends ResponseRest{
+
+    private ProductImportResponse productImportResponse = new ProductImportResponse();
+
+}
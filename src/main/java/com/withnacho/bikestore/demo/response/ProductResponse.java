@@ -14,4 +14,10 @@ public class ProductResponse {
 
     List<Product> productsList;
 
+    /**
+     * ID of the last Product of the page, to be sent back as "after" to get the next page.
+     * It is null when there are no more Products or the request was not paginated.
+     */
+    private Long nextCursor;
+
 }
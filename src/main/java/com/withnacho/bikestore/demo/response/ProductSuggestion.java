@@ -0,0 +1,7 @@
+package com.withnacho.bikestore.demo.response;
+
+/**
+ * ID and name of a Product suggested for an autocomplete prefix.
+ */
+public record ProductSuggestion(Long id, String name) {
+}
@@ -0,0 +1,16 @@
+package com.withnacho.bikestore.demo.response;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Class containing a list of Product suggestions to be used by ProductSuggestionResponseRest.java to set the metadata of certain queries.
+ * @see ProductSuggestionResponseRest
+ */
+@Data
+public class ProductSuggestionResponse {
+
+    private List<ProductSuggestion> suggestionsList;
+
+}
@@ -0,0 +1,17 @@
+package com.withnacho.bikestore.demo.response;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Class that instantiates a ProductSuggestionResponse and inherits from ResponseRest to set the metadata of certain queries.
+ * @see ProductSuggestionResponse
+ * @see ResponseRest
+ */
+@Getter
+@Setter
+public class ProductSuggestionResponseRest extends ResponseRest{
+
+    private ProductSuggestionResponse productSuggestionResponse = new ProductSuggestionResponse();
+
+}
@@ -0,0 +1,17 @@
+package com.withnacho.bikestore.demo.response;
+
+import java.util.List;
+
+import com.withnacho.bikestore.demo.entity.StockReservation;
+import lombok.Data;
+
+/**
+ * Class containing a list of StockReservations to be used by StockReservationResponseRest.java to set the metadata of certain queries.
+ * @see StockReservationResponseRest
+ */
+@Data
+public class StockReservationResponse {
+
+    private List<StockReservation> reservationsList;
+
+}
@@ -0,0 +1,17 @@
+package com.withnacho.bikestore.demo.response;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Class that instantiates a StockReservationResponse and inherits from ResponseRest to set the metadata of certain queries.
+ * @see StockReservationResponse
+ * @see ResponseRest
+ */
+@Getter
+@Setter
+public class StockReservationResponseRest extends ResponseRest{
+
+    private StockReservationResponse stockReservationResponse = new StockReservationResponse();
+
+}
@@ -0,0 +1,93 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.withnacho.bikestore.demo.dao.ICategoryDao;
+import com.withnacho.bikestore.demo.entity.Category;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Read-through cache of all the Categories. The category table is small and rarely changes, so it is read as a whole
+ * on the first access and kept in memory until a Category is saved, updated or deleted.
+ * The cached Categories are shared and detached: they must not be modified.
+ */
+@Component
+public class CategoryCache {
+
+    private final ICategoryDao categoryDao;
+    // Incremented on every invalidation, so a load that raced with a change is not kept.
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile Categories categories;
+
+    public CategoryCache(ICategoryDao categoryDao) {
+        this.categoryDao = categoryDao;
+    }
+
+    /**
+     * @return All the Categories, in ID order.
+     */
+    public List<Category> findAll() {
+        return load().all();
+    }
+
+    /**
+     * @param id The ID of the Category to be found.
+     * @return The Category or empty if it does not exist.
+     */
+    public Optional<Category> findById(Long id) {
+        return Optional.ofNullable(load().byId().get(id));
+    }
+
+    /**
+     * Drops the cached Categories now and again when the current transaction completes, so a read that happens
+     * before the commit does not keep the old data.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        categories = null;
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    generation.incrementAndGet();
+                    categories = null;
+                }
+            });
+        }
+    }
+
+    private Categories load() {
+        Categories current = categories;
+        if (current != null) {
+            return current;
+        }
+
+        long loadedGeneration = generation.get();
+        List<Category> all = new ArrayList<>();
+        categoryDao.findAll().forEach(all::add);
+        all.sort((first, second) -> Long.compare(first.getId(), second.getId()));
+
+        Map<Long, Category> byId = new LinkedHashMap<>();
+        all.forEach((category) -> byId.put(category.getId(), category));
+        Categories loaded = new Categories(Collections.unmodifiableList(all), Collections.unmodifiableMap(byId));
+
+        if (generation.get() == loadedGeneration) {
+            categories = loaded;
+        }
+        return loaded;
+    }
+
+    private record Categories(List<Category> all, Map<Long, Category> byId) {
+    }
+
+}
@@ -7,6 +7,9 @@ import java.util.Optional;
 import com.withnacho.bikestore.demo.dao.ICategoryDao;
 import com.withnacho.bikestore.demo.entity.Category;
 import com.withnacho.bikestore.demo.response.CategoryResponseRest;
+import com.withnacho.bikestore.demo.response.CategoryStats;
+import com.withnacho.bikestore.demo.response.CategoryStatsResponseRest;
+import com.withnacho.bikestore.demo.util.EntityTags;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -19,18 +22,24 @@ public class CategoryServiceImpl implements ICategoryService{
     @Autowired
     private ICategoryDao categoryDao;
 
+    @Autowired
+    private CategoryCache categoryCache;
+
+    @Autowired
+    private CategoryStatsCounters categoryStatsCounters;
+
     /**
      * REST Request for getting all the Categories in the DB.
+     * They are served from CategoryCache, so no transaction is opened unless the cache has to be loaded.
      * @return OK if all the Categories were retrieved or ERROR if something unexpected happened.
      */
     @Override
-    @Transactional(readOnly = true)
     public ResponseEntity<CategoryResponseRest> findCategories() {
 
         CategoryResponseRest categoriesResponse = new CategoryResponseRest();
 
         try {
-            List<Category> categoriesList = (List<Category>) categoryDao.findAll();
+            List<Category> categoriesList = categoryCache.findAll();
             categoriesResponse.getCategoryResponse().setCategoryList(categoriesList);
             categoriesResponse.setMetadata("OK", "00", "Categories found");
 
@@ -47,11 +56,11 @@ public class CategoryServiceImpl implements ICategoryService{
 
     /**
      * REST Request for getting a Category by its ID.
+     * It is served from CategoryCache, so no transaction is opened unless the cache has to be loaded.
      * @param id The ID of the Category to be found.
      * @return OK if the Category was found or ERROR if it was not or something wrong happened.
      */
     @Override
-    @Transactional(readOnly = true)
     public ResponseEntity<CategoryResponseRest> findCategoryById(Long id) {
 
         CategoryResponseRest categoriesResponse = new CategoryResponseRest();
@@ -59,7 +68,7 @@ public class CategoryServiceImpl implements ICategoryService{
 
         try {
 
-            Optional<Category> category = categoryDao.findById(id);
+            Optional<Category> category = categoryCache.findById(id);
 
             if (category.isPresent()) {
                 categoriesList.add(category.get());
@@ -97,6 +106,7 @@ public class CategoryServiceImpl implements ICategoryService{
         try {
 
             Category categorySaved = categoryDao.save(category);
+            categoryCache.invalidate();
 
             if (categorySaved != null) {
                 categoriesList.add(categorySaved);
@@ -142,6 +152,7 @@ public class CategoryServiceImpl implements ICategoryService{
                 categorySearch.get().setDescription(category.getDescription());
 
                 Category categoryToUpdate = categoryDao.save(categorySearch.get());
+                categoryCache.invalidate();
 
                 if (categoryToUpdate != null) {
                     categoriesList.add(categoryToUpdate);
@@ -185,6 +196,7 @@ public class CategoryServiceImpl implements ICategoryService{
         try {
 
             categoryDao.deleteById(id);
+            categoryCache.invalidate();
             categoriesResponse.setMetadata("OK", "00", "Category deleted");
 
 
@@ -201,5 +213,80 @@ public class CategoryServiceImpl implements ICategoryService{
 
     }
 
-}
+    /**
+     * Gets the ETag of the list of all the Categories, from CategoryCache.
+     * @return The ETag, which changes whenever a Category is saved, updated or deleted.
+     */
+    @Override
+    public String findCategoriesETag() {
+        return EntityTags.ofCategories(categoryCache.findAll());
+    }
+
+    /**
+     * REST Request for getting the number of Products, total units and stock value of every Category.
+     * They are read from CategoryStatsCounters, without querying the Products.
+     * @return OK with the stats of all the Categories or ERROR if something unexpected happened.
+     */
+    @Override
+    public ResponseEntity<CategoryStatsResponseRest> findCategoriesStats() {
+
+        CategoryStatsResponseRest statsResponse = new CategoryStatsResponseRest();
+
+        try {
+            List<CategoryStats> statsList = new ArrayList<>();
+            for (Category category : categoryCache.findAll()) {
+                statsList.add(stats(category));
+            }
+            statsResponse.getCategoryStatsResponse().setStatsList(statsList);
+            statsResponse.setMetadata("OK", "00", "Category stats found");
+
+        } catch (Exception e) {
+
+            statsResponse.setMetadata("ERROR", "-1", "INTERNAL SERVER ERROR");
+            e.getStackTrace();
+            return new ResponseEntity<CategoryStatsResponseRest>(statsResponse, HttpStatus.INTERNAL_SERVER_ERROR);
+
+        }
+
+        return new ResponseEntity<CategoryStatsResponseRest>(statsResponse, HttpStatus.OK);
+    }
+
+    /**
+     * REST Request for getting the number of Products, total units and stock value of a Category.
+     * @param id The ID of the Category.
+     * @return OK if the Category was found or ERROR if it was not or something wrong happened.
+     */
+    @Override
+    public ResponseEntity<CategoryStatsResponseRest> findCategoryStats(Long id) {
+
+        CategoryStatsResponseRest statsResponse = new CategoryStatsResponseRest();
+
+        try {
+            Optional<Category> category = categoryCache.findById(id);
+
+            if (category.isPresent()) {
+                statsResponse.getCategoryStatsResponse().setStatsList(List.of(stats(category.get())));
+                statsResponse.setMetadata("OK", "00", "Category stats found");
+            } else {
+                statsResponse.setMetadata("ERROR", "-1", "Category not found");
+                return new ResponseEntity<CategoryStatsResponseRest>(statsResponse, HttpStatus.NOT_FOUND);
+            }
+
+        } catch (Exception e) {
+
+            statsResponse.setMetadata("ERROR", "-1", "INTERNAL SERVER ERROR");
+            e.getStackTrace();
+            return new ResponseEntity<CategoryStatsResponseRest>(statsResponse, HttpStatus.INTERNAL_SERVER_ERROR);
+
+        }
+
+        return new ResponseEntity<CategoryStatsResponseRest>(statsResponse, HttpStatus.OK);
+    }
 
+    private CategoryStats stats(Category category) {
+        CategoryStatsCounters.Totals totals = categoryStatsCounters.find(category.getId());
+        return new CategoryStats(category.getId(), category.getName(), totals.products(), totals.units(),
+                totals.stockValue());
+    }
+
+}
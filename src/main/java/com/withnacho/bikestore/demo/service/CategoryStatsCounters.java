@@ -0,0 +1,202 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.withnacho.bikestore.demo.dao.CategoryStatsProjection;
+import com.withnacho.bikestore.demo.dao.IProductDao;
+import com.withnacho.bikestore.demo.event.ProductChangedEvent;
+import com.withnacho.bikestore.demo.event.ProductSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * This class keeps, per Category, the number of Products, their total units and the value of that stock, so they
+ * are read without querying the Products. Every committed change of a Product moves its old values out of the
+ * totals and its new values in. The totals are loaded with a GROUP BY query on startup, and compared with it again
+ * every bikestore.category-stats.reconcile-seconds: a difference (a change made outside the application) is
+ * corrected and counted in the bikestore.category.stats.corrections metric. A Category changed while the query runs
+ * keeps its totals until the next reconciliation, as the query may or may not have seen that change.
+ */
+@Component
+public class CategoryStatsCounters implements SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CategoryStatsCounters.class);
+
+    /**
+     * Aggregates of the Products of a Category.
+     */
+    public record Totals(long products, long units, long stockValue) {
+
+        public static final Totals ZERO = new Totals(0, 0, 0);
+
+        private static Totals of(ProductSnapshot product) {
+            return new Totals(1, product.quantity(), (long) product.price() * product.quantity());
+        }
+
+        private Totals plus(Totals other) {
+            return new Totals(products + other.products, units + other.units, stockValue + other.stockValue);
+        }
+
+        private Totals negate() {
+            return new Totals(-products, -units, -stockValue);
+        }
+
+    }
+
+    private final IProductDao productDao;
+    private final Counter corrections;
+    private final long reconcileSeconds;
+    private ScheduledExecutorService reconciliations;
+    // Replaced by each reconciliation, and changed only while holding the lock of this.
+    private volatile Map<Long, Totals> totals = new ConcurrentHashMap<>();
+    // Categories changed while a reconciliation queries the DB. Null between them.
+    private Set<Long> changedDuringReconciliation;
+
+    public CategoryStatsCounters(IProductDao productDao, MeterRegistry meterRegistry,
+                                 @Value("${bikestore.category-stats.reconcile-seconds:300}") long reconcileSeconds) {
+        this.productDao = productDao;
+        this.corrections = meterRegistry.counter("bikestore.category.stats.corrections");
+        this.reconcileSeconds = reconcileSeconds;
+    }
+
+    /**
+     * @param categoryId The ID of the Category.
+     * @return The aggregates of its Products, zero if it has none.
+     */
+    public Totals find(Long categoryId) {
+        return totals.getOrDefault(categoryId, Totals.ZERO);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onProductChanged(ProductChangedEvent event) {
+        apply(totals, event);
+        if (changedDuringReconciliation != null) {
+            addCategory(changedDuringReconciliation, event.before());
+            addCategory(changedDuringReconciliation, event.after());
+        }
+    }
+
+    // The first totals are loaded before the server accepts requests.
+    @Override
+    public void afterSingletonsInstantiated() {
+        reconcile();
+
+        reconciliations = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "category-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconciliations.scheduleWithFixedDelay(this::reconcileQuietly, reconcileSeconds, reconcileSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (reconciliations != null) {
+            reconciliations.shutdownNow();
+        }
+    }
+
+    /**
+     * Replaces the totals with those of a GROUP BY query, except for the Categories changed meanwhile.
+     * @return The number of Categories whose totals were wrong.
+     */
+    public int reconcile() {
+        synchronized (this) {
+            if (changedDuringReconciliation == null) {
+                changedDuringReconciliation = new HashSet<>();
+            }
+        }
+
+        Map<Long, Totals> reconciled = new ConcurrentHashMap<>();
+        try {
+            for (CategoryStatsProjection row : productDao.findCategoryStats()) {
+                reconciled.put(row.getCategoryId(), new Totals(row.getProducts(), row.getUnits(), row.getStockValue()));
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                changedDuringReconciliation = null;
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            // Their change may have committed before or after the query read them: their totals are kept.
+            for (Long categoryId : changedDuringReconciliation) {
+                Totals current = totals.get(categoryId);
+                if (current == null) {
+                    reconciled.remove(categoryId);
+                } else {
+                    reconciled.put(categoryId, current);
+                }
+            }
+            changedDuringReconciliation = null;
+
+            int wrong = 0;
+            for (Long categoryId : union(totals, reconciled)) {
+                if (!Objects.equals(find(categoryId), reconciled.getOrDefault(categoryId, Totals.ZERO))) {
+                    wrong++;
+                }
+            }
+            totals = reconciled;
+
+            if (wrong > 0) {
+                corrections.increment(wrong);
+            }
+            return wrong;
+        }
+    }
+
+    private void reconcileQuietly() {
+        try {
+            int wrong = reconcile();
+            if (wrong > 0) {
+                LOGGER.info("Corrected the stats of {} categories", wrong);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not reconcile the category stats, they will be on the next run", e);
+        }
+    }
+
+    private static void apply(Map<Long, Totals> totals, ProductChangedEvent event) {
+        move(totals, event.before(), true);
+        move(totals, event.after(), false);
+    }
+
+    private static void addCategory(Set<Long> categoryIds, ProductSnapshot product) {
+        if (product != null && product.categoryId() != null) {
+            categoryIds.add(product.categoryId());
+        }
+    }
+
+    private static void move(Map<Long, Totals> totals, ProductSnapshot product, boolean out) {
+        if (product == null || product.categoryId() == null) {
+            return;
+        }
+        Totals change = out ? Totals.of(product).negate() : Totals.of(product);
+        totals.merge(product.categoryId(), change, Totals::plus);
+    }
+
+    private static List<Long> union(Map<Long, Totals> first, Map<Long, Totals> second) {
+        List<Long> categoryIds = new ArrayList<>(first.keySet());
+        second.keySet().stream().filter((categoryId) -> !first.containsKey(categoryId)).forEach(categoryIds::add);
+        return categoryIds;
+    }
+
+}
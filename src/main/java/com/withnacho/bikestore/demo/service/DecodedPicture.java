@@ -0,0 +1,10 @@
+package com.withnacho.bikestore.demo.service;
+
+/**
+ * Decompressed picture of a Product, ready to be written to a response.
+ * @param contentType The content type of the picture.
+ * @param checksum The CRC32 of the picture, used as its ETag.
+ * @param data The picture bytes.
+ */
+public record DecodedPicture(String contentType, long checksum, byte[] data) {
+}
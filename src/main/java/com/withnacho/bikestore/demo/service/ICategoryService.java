@@ -2,6 +2,7 @@ package com.withnacho.bikestore.demo.service;
 
 import com.withnacho.bikestore.demo.entity.Category;
 import com.withnacho.bikestore.demo.response.CategoryResponseRest;
+import com.withnacho.bikestore.demo.response.CategoryStatsResponseRest;
 import org.springframework.http.ResponseEntity;
 
 public interface ICategoryService {
@@ -11,5 +12,8 @@ public interface ICategoryService {
     public ResponseEntity<CategoryResponseRest> saveCategory(Category category);
     public ResponseEntity<CategoryResponseRest> updateCategory(Category category, Long id);
     public ResponseEntity<CategoryResponseRest> deleteCategoryById(Long id);
+    public String findCategoriesETag();
+    public ResponseEntity<CategoryStatsResponseRest> findCategoriesStats();
+    public ResponseEntity<CategoryStatsResponseRest> findCategoryStats(Long id);
 
 }
@@ -0,0 +1,12 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.io.InputStream;
+
+import com.withnacho.bikestore.demo.response.ProductImportResponseRest;
+import org.springframework.http.ResponseEntity;
+
+public interface IProductImportService {
+
+    public ResponseEntity<ProductImportResponseRest> importProducts(InputStream inputStream);
+
+}
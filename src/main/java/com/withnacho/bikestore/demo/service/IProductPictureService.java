@@ -0,0 +1,19 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+import com.withnacho.bikestore.demo.entity.ProductPicture;
+
+public interface IProductPictureService {
+
+    public void savePicture(Long productId, byte[] picture);
+    public ProductPicture encodePicture(byte[] picture);
+    public void savePicture(Long productId, ProductPicture picture);
+    public Optional<ProductPicture> findPicture(Long productId);
+    public Optional<DecodedPicture> findDecodedPicture(Long productId);
+    public Map<Long, DecodedPicture> findDecodedPictures(Collection<Long> productIds);
+    public void deletePicture(Long productId);
+
+}
@@ -1,16 +1,38 @@
 package com.withnacho.bikestore.demo.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
 import com.withnacho.bikestore.demo.entity.Product;
+import com.withnacho.bikestore.demo.response.PriceAdjustmentResponseRest;
+import com.withnacho.bikestore.demo.response.ProductChangesResponseRest;
 import com.withnacho.bikestore.demo.response.ProductResponseRest;
+import com.withnacho.bikestore.demo.response.ProductSuggestionResponseRest;
 import org.springframework.http.ResponseEntity;
 
 public interface IProductService {
 
     public ResponseEntity<ProductResponseRest> saveProduct(Product product, Long categoryId);
     public ResponseEntity<ProductResponseRest> findProductById(Long id);
-    public ResponseEntity<ProductResponseRest> findProductByName(String name);
+    public ResponseEntity<ProductResponseRest> findProductByName(String name, boolean inlinePictures);
     public ResponseEntity<ProductResponseRest> deleteProductById(Long id);
-    public ResponseEntity<ProductResponseRest> findProducts();
+    public ResponseEntity<ProductResponseRest> findProducts(boolean inlinePictures);
+    public ResponseEntity<ProductResponseRest> findProductsByIds(List<Long> ids, boolean inlinePictures);
+    public ResponseEntity<ProductResponseRest> findProductsPage(Long after, Integer limit, boolean inlinePictures);
+    public ResponseEntity<ProductResponseRest> patchProduct(Long id, String name, Integer price, Integer quantity,
+                                                            Long categoryId, byte[] picture);
     public ResponseEntity<ProductResponseRest> updateProduct(Product product, Long categoryId, Long id);
+    public Optional<DecodedPicture> findProductPicture(Long id);
+    public void exportProducts(OutputStream outputStream) throws IOException;
+    public ResponseEntity<ProductSuggestionResponseRest> suggestProducts(String prefix, Integer limit);
+    public String findProductsETag();
+    public ResponseEntity<ProductChangesResponseRest> findProductChanges(Long since, Integer limit);
+    public ResponseEntity<ProductResponseRest> recordQuantityUpdate(Long id, int delta);
+    public ResponseEntity<PriceAdjustmentResponseRest> adjustCategoryPrices(Long categoryId, BigDecimal percent,
+                                                                            Integer amount, boolean dryRun);
+    public ResponseEntity<PriceAdjustmentResponseRest> findPriceAdjustment(String jobId);
 
 }
@@ -0,0 +1,12 @@
+package com.withnacho.bikestore.demo.service;
+
+import com.withnacho.bikestore.demo.response.StockReservationResponseRest;
+import org.springframework.http.ResponseEntity;
+
+public interface IStockReservationService {
+
+    public ResponseEntity<StockReservationResponseRest> reserve(Long productId, int quantity, Long ttlSeconds);
+    public ResponseEntity<StockReservationResponseRest> release(String reservationId);
+    public ResponseEntity<StockReservationResponseRest> commit(String reservationId);
+
+}
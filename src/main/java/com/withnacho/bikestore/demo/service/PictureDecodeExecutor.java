@@ -0,0 +1,65 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * This class decodes several pictures at once on a dedicated, bounded pool of threads, so decoding a long list of
+ * pictures does not take one core per request thread nor starve the request threads of CPU.
+ */
+@Component
+public class PictureDecodeExecutor implements DisposableBean {
+
+    private final ExecutorService executor;
+
+    public PictureDecodeExecutor(@Value("${bikestore.picture.decode-parallelism:0}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadCount = new AtomicInteger();
+
+        this.executor = Executors.newFixedThreadPool(threads, (runnable) -> {
+            Thread thread = new Thread(runnable, "picture-decode-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Decodes all the given items in parallel.
+     * @param items The items to be decoded.
+     * @param decoder The function decoding one item.
+     * @return The decoded items, in the same order as the given ones.
+     */
+    public <T, R> List<R> decodeAll(List<T> items, Function<T, R> decoder) {
+        if (items.size() <= 1) {
+            return items.stream().map(decoder).toList();
+        }
+
+        List<CompletableFuture<R>> futures = new ArrayList<>(items.size());
+        items.forEach((item) -> futures.add(CompletableFuture.supplyAsync(() -> decoder.apply(item), executor)));
+
+        List<R> decoded = new ArrayList<>(items.size());
+        try {
+            futures.forEach((future) -> decoded.add(future.join()));
+        } catch (CompletionException e) {
+            futures.forEach((future) -> future.cancel(false));
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        return decoded;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.withnacho.bikestore.demo.dao.ProductPriceDao;
+import com.withnacho.bikestore.demo.event.ProductChangedEvent;
+import com.withnacho.bikestore.demo.event.ProductSnapshot;
+import com.withnacho.bikestore.demo.response.PriceAdjustmentResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This class runs the price adjustments of whole Categories in the background and keeps their progress.
+ * Each chunk of bikestore.price-adjustment.chunk-size Products is changed with one UPDATE, in its own transaction,
+ * so the rows are locked for a chunk at a time and a failure keeps the chunks already committed: the progress
+ * tells which ones. Finished adjustments are kept for retention-minutes.
+ */
+@Component
+public class PriceAdjustmentJobs implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PriceAdjustmentJobs.class);
+
+    private final ProductPriceDao productPriceDao;
+    private final ProductChangeSequence productChangeSequence;
+    private final ProductStockChanges productStockChanges;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final Duration retention;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool((runnable) -> {
+        Thread thread = new Thread(runnable, "price-adjustment");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PriceAdjustmentJobs(ProductPriceDao productPriceDao, ProductChangeSequence productChangeSequence,
+                               ProductStockChanges productStockChanges, ApplicationEventPublisher eventPublisher,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${bikestore.price-adjustment.chunk-size:500}") int chunkSize,
+                               @Value("${bikestore.price-adjustment.retention-minutes:60}") long retentionMinutes) {
+        this.productPriceDao = productPriceDao;
+        this.productChangeSequence = productChangeSequence;
+        this.productStockChanges = productStockChanges;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.retention = Duration.ofMinutes(retentionMinutes);
+    }
+
+    /**
+     * @return The number of Products an adjustment of the Category would change.
+     */
+    public long countAffected(Long categoryId) {
+        return productPriceDao.countByCategory(categoryId);
+    }
+
+    /**
+     * Starts adjusting the prices of a Category. Exactly one of percent and amount must be given.
+     * @param categoryId The ID of the Category.
+     * @param percent Percentage to be added to the prices (negative to lower them), or null.
+     * @param amount Amount to be added to the prices (negative to lower them), or null.
+     * @return The state of the adjustment, or empty if the Category is already being adjusted.
+     */
+    public synchronized Optional<PriceAdjustmentResponse> start(Long categoryId, BigDecimal percent, Integer amount) {
+        Instant now = Instant.now();
+        jobs.values().removeIf((job) -> job.finishedAt != null && job.finishedAt.plus(retention).isBefore(now));
+        if (jobs.values().stream().anyMatch((job) -> job.categoryId.equals(categoryId) && job.finishedAt == null)) {
+            return Optional.empty();
+        }
+
+        Job job = new Job(UUID.randomUUID().toString(), categoryId, percent, amount, countAffected(categoryId), now);
+        jobs.put(job.id, job);
+        executor.execute(() -> run(job));
+        return Optional.of(job.toResponse());
+    }
+
+    /**
+     * @return The state of an adjustment, or empty if it is not known or was finished too long ago.
+     */
+    public Optional<PriceAdjustmentResponse> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(Job::toResponse);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void run(Job job) {
+        BigDecimal factor = job.percent == null ? null
+                : BigDecimal.ONE.add(job.percent.divide(BigDecimal.valueOf(100), 6, RoundingMode.HALF_UP));
+        long afterId = 0;
+
+        try {
+            while (true) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IllegalStateException("Interrupted by the shutdown");
+                }
+                long from = afterId;
+                Chunk chunk = transactionTemplate.execute((status) -> adjustChunk(job, factor, from));
+                if (chunk == null) {
+                    break;
+                }
+                // Counted once committed.
+                job.processed += chunk.adjusted();
+                afterId = chunk.upTo();
+            }
+            job.status = "COMPLETED";
+        } catch (RuntimeException e) {
+            LOGGER.warn("Price adjustment {} of category {} failed after {} products", job.id, job.categoryId,
+                    job.processed, e);
+            job.status = "FAILED";
+        }
+        job.finishedAt = Instant.now();
+    }
+
+    // Adjusts the chunk after the given ID, or returns null if there are no more Products.
+    private Chunk adjustChunk(Job job, BigDecimal factor, long afterId) {
+        Long chunkEnd = productPriceDao.findChunkEnd(job.categoryId, afterId, chunkSize);
+        if (chunkEnd == null) {
+            return null;
+        }
+
+        // The counter first: every writer locks the change_counter row before the Product rows. The numbers are
+        // taken once the rows are locked, one per Product of the chunk.
+        productChangeSequence.lock();
+        List<ProductSnapshot> before = productPriceDao.lockChunk(job.categoryId, afterId, chunkEnd);
+        if (before.isEmpty()) {
+            return new Chunk(chunkEnd, 0);
+        }
+
+        Instant now = Instant.now();
+        List<Long> productIds = before.stream().map(ProductSnapshot::id).toList();
+        long firstSeq = productChangeSequence.next(productIds.size());
+        if (factor != null) {
+            productPriceDao.multiplyPrices(productIds, factor, firstSeq, now);
+        } else {
+            productPriceDao.addToPrices(productIds, job.amount, firstSeq, now);
+        }
+
+        Map<Long, ProductSnapshot> beforeById = before.stream()
+                .collect(Collectors.toMap(ProductSnapshot::id, Function.identity()));
+        List<ProductSnapshot> after = productPriceDao.findByIds(productIds);
+        for (ProductSnapshot changed : after) {
+            eventPublisher.publishEvent(ProductChangedEvent.updated(beforeById.get(changed.id()), changed));
+        }
+        productStockChanges.evict(productIds);
+        return new Chunk(chunkEnd, after.size());
+    }
+
+    private record Chunk(long upTo, int adjusted) {
+    }
+
+    private static final class Job {
+
+        private final String id;
+        private final Long categoryId;
+        private final BigDecimal percent;
+        private final Integer amount;
+        private final long total;
+        private final Instant startedAt;
+        private volatile long processed;
+        private volatile String status = "RUNNING";
+        private volatile Instant finishedAt;
+
+        private Job(String id, Long categoryId, BigDecimal percent, Integer amount, long total, Instant startedAt) {
+            this.id = id;
+            this.categoryId = categoryId;
+            this.percent = percent;
+            this.amount = amount;
+            this.total = total;
+            this.startedAt = startedAt;
+        }
+
+        private PriceAdjustmentResponse toResponse() {
+            PriceAdjustmentResponse response = new PriceAdjustmentResponse();
+            response.setJobId(id);
+            response.setCategoryId(categoryId);
+            response.setPercent(percent);
+            response.setAmount(amount);
+            response.setStatus(status);
+            response.setTotal(total);
+            response.setProcessed(processed);
+            response.setStartedAt(startedAt);
+            response.setFinishedAt(finishedAt);
+            return response;
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.withnacho.bikestore.demo.service;
+
+import com.withnacho.bikestore.demo.entity.ChangeCounter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Hands out the modification sequence numbers of the Products, which order the change feed.
+ * The counter row stays locked until the write commits, so writes that take numbers commit one after the other,
+ * in number order: a client that has seen a number can never miss a smaller one committed later.
+ * This serializes every write of Products across the application: saves, updates, patches, deletes and imports,
+ * the price jobs, the quantity write-behind and the stock reservation batches all queue on this one row, whatever
+ * Products they touch.
+ * Their throughput is bounded by how long each holds the lock, so numbers should be taken as late as possible in the
+ * write, and nothing slow should happen between taking them and the commit.
+ */
+@Component
+public class ProductChangeSequence {
+
+    public static final String COUNTER_NAME = "product";
+
+    private EntityManager entityManager;
+
+    public ProductChangeSequence(EntityManager entityManager) {
+        super();
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Locks the counter without taking numbers, for writers that only know how many they need once they have locked
+     * the Products they change: the counter must still be locked before them.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void lock() {
+        counter();
+    }
+
+    /**
+     * Takes a block of consecutive sequence numbers.
+     * @param count How many numbers to take.
+     * @return The first number of the block.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public long next(int count) {
+        ChangeCounter counter = counter();
+        long first = counter.getLastSeq() + 1;
+        counter.setLastSeq(counter.getLastSeq() + count);
+        return first;
+    }
+
+    private ChangeCounter counter() {
+        ChangeCounter counter = entityManager.find(ChangeCounter.class, COUNTER_NAME, LockModeType.PESSIMISTIC_WRITE);
+        if (counter == null) {
+            throw new IllegalStateException("Missing change_counter row " + COUNTER_NAME);
+        }
+        return counter;
+    }
+
+}
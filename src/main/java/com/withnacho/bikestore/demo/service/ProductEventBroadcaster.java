@@ -0,0 +1,229 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.withnacho.bikestore.demo.event.ProductChangedEvent;
+import com.withnacho.bikestore.demo.event.ProductStockChange;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes the committed changes of the Products to the clients of GET /api/v1/products/stream (Server-Sent Events).
+ * A change is only put in the buffer of each client, so a write costs one enqueue per client and never waits for
+ * the network. The buffer holds the latest change of each Product not yet sent, so a client that falls behind during
+ * a burst of changes to the same Products is only sent their last state. If changes of more than
+ * bikestore.sse.buffer-size Products are waiting, the buffer is emptied and the client is sent a "resync" event
+ * instead: it should then catch up with GET /api/v1/products/changes, and keeps receiving the changes that follow.
+ * Each client is sent its buffer by its own virtual thread.
+ */
+@Component
+public class ProductEventBroadcaster implements DisposableBean {
+
+    private static final String EVENT_NAME = "product";
+    private static final String RESYNC_EVENT_NAME = "resync";
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicLong eventIds = new AtomicLong();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService heartbeats;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final long timeoutMillis;
+    private final Counter resyncs;
+
+    public ProductEventBroadcaster(@Value("${bikestore.sse.buffer-size:256}") int bufferSize,
+                                   @Value("${bikestore.sse.max-subscribers:1000}") int maxSubscribers,
+                                   @Value("${bikestore.sse.timeout-ms:1800000}") long timeoutMillis,
+                                   @Value("${bikestore.sse.heartbeat-seconds:25}") long heartbeatSeconds,
+                                   MeterRegistry meterRegistry) {
+        this.bufferSize = Math.max(bufferSize, 1);
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = timeoutMillis;
+        this.resyncs = Counter.builder("bikestore.sse.resyncs")
+                .description("Resync events sent to clients that could not keep up").register(meterRegistry);
+        Gauge.builder("bikestore.sse.subscribers", subscribers, List::size)
+                .description("Connected clients").register(meterRegistry);
+
+        // Comments sent regularly, so proxies do not close idle connections and dead clients are noticed.
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "sse-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeats.scheduleAtFixedRate(() -> subscribers.forEach((subscriber) -> subscriber.comment("heartbeat")),
+                heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Connects a new client.
+     * @return The emitter of the client, or empty if there are already bikestore.sse.max-subscribers clients.
+     */
+    public Optional<SseEmitter> subscribe() {
+        if (subscribers.size() >= maxSubscribers) {
+            return Optional.empty();
+        }
+
+        Subscriber subscriber = new Subscriber(newEmitter());
+        subscriber.emitter.onCompletion(subscriber::closed);
+        subscriber.emitter.onTimeout(subscriber::closed);
+        subscriber.emitter.onError((e) -> subscriber.closed());
+        subscribers.add(subscriber);
+        // Sent right away, so the client and the proxies see the stream is open.
+        subscriber.comment("connected");
+        return Optional.of(subscriber.emitter);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        ProductStockChange change = ProductStockChange.of(event);
+        Message message = new Message(eventIds.incrementAndGet(), change);
+        subscribers.forEach((subscriber) -> subscriber.offer(change.id(), message));
+    }
+
+    @Override
+    public void destroy() {
+        heartbeats.shutdownNow();
+        subscribers.forEach((subscriber) -> subscriber.emitter.complete());
+        senders.shutdownNow();
+    }
+
+    protected SseEmitter newEmitter() {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    /**
+     * A change to be sent.
+     */
+    private record Message(long id, ProductStockChange change) {
+
+        SseEmitter.SseEventBuilder toEvent() {
+            return SseEmitter.event().id(Long.toString(id)).name(EVENT_NAME).data(change, MediaType.APPLICATION_JSON);
+        }
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        // Guarded by this: the latest change of each Product not sent yet, oldest first, the ID of the last change
+        // dropped if a resync is to be sent (0 otherwise) and the comment to be sent.
+        private final LinkedHashMap<Long, Message> changes = new LinkedHashMap<>();
+        private long resyncId;
+        private String comment;
+        // True while a sender is running for this client: there is never more than one.
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        // Called by the writing threads: it must never block for long.
+        private void offer(Long productId, Message message) {
+            if (closed) {
+                return;
+            }
+            synchronized (this) {
+                // Moved to the end, so the events are still sent in ID order.
+                changes.remove(productId);
+                changes.put(productId, message);
+                if (changes.size() > bufferSize) {
+                    changes.clear();
+                    resyncId = message.id();
+                    resyncs.increment();
+                }
+            }
+            wakeSender();
+        }
+
+        private void comment(String text) {
+            if (closed) {
+                return;
+            }
+            synchronized (this) {
+                comment = text;
+            }
+            wakeSender();
+        }
+
+        private void wakeSender() {
+            if (sending.compareAndSet(false, true)) {
+                senders.execute(this::send);
+            }
+        }
+
+        private void send() {
+            try {
+                SseEmitter.SseEventBuilder event;
+                while (!closed && (event = next()) != null) {
+                    emitter.send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The connection is gone: the container completes the emitter.
+                closed();
+            } finally {
+                sending.set(false);
+            }
+
+            // A message offered after the last poll, but before the flag was cleared, is sent now.
+            if (!closed && hasNext()) {
+                wakeSender();
+            }
+        }
+
+        private synchronized SseEmitter.SseEventBuilder next() {
+            if (comment != null) {
+                SseEmitter.SseEventBuilder event = SseEmitter.event().comment(comment);
+                comment = null;
+                return event;
+            }
+            if (resyncId != 0) {
+                SseEmitter.SseEventBuilder event = SseEmitter.event().id(Long.toString(resyncId))
+                        .name(RESYNC_EVENT_NAME).data("GET /api/v1/products/changes");
+                resyncId = 0;
+                return event;
+            }
+
+            Iterator<Message> oldest = changes.values().iterator();
+            if (!oldest.hasNext()) {
+                return null;
+            }
+            Message message = oldest.next();
+            oldest.remove();
+            return message.toEvent();
+        }
+
+        private synchronized boolean hasNext() {
+            return comment != null || resyncId != 0 || !changes.isEmpty();
+        }
+
+        private void closed() {
+            closed = true;
+            subscribers.remove(this);
+            synchronized (this) {
+                changes.clear();
+                resyncId = 0;
+                comment = null;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,211 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.withnacho.bikestore.demo.dao.IProductDao;
+import com.withnacho.bikestore.demo.entity.Category;
+import com.withnacho.bikestore.demo.entity.Product;
+import com.withnacho.bikestore.demo.event.ProductChangedEvent;
+import com.withnacho.bikestore.demo.event.ProductSnapshot;
+import com.withnacho.bikestore.demo.response.ProductImportError;
+import com.withnacho.bikestore.demo.response.ProductImportResponse;
+import com.withnacho.bikestore.demo.response.ProductImportResponseRest;
+import com.withnacho.bikestore.demo.util.ProductSheetReader;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This class imports Products from the EXCEL or CSV files written by ProductExcelExporter. The file is read as a stream
+ * and the Products are saved in chunks, one transaction per chunk, whose inserts Hibernate sends in JDBC batches.
+ * A chunk that fails is saved again row by row, so only the rows at fault are rejected.
+ */
+@Service
+public class ProductImportServiceImpl implements IProductImportService {
+
+    // Rejected rows listed in the response; the rest are only counted.
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private static final int NAME_COLUMN = 1;
+    private static final int PRICE_COLUMN = 2;
+    private static final int QUANTITY_COLUMN = 3;
+    private static final int CATEGORY_COLUMN = 4;
+
+    private CategoryCache categoryCache;
+    private IProductDao productDao;
+    private EntityManager entityManager;
+    private TransactionTemplate transactionTemplate;
+    private ApplicationEventPublisher eventPublisher;
+    private ProductChangeSequence productChangeSequence;
+    private int chunkSize;
+
+    public ProductImportServiceImpl(CategoryCache categoryCache, IProductDao productDao, EntityManager entityManager,
+                                    TransactionTemplate transactionTemplate, ApplicationEventPublisher eventPublisher,
+                                    ProductChangeSequence productChangeSequence,
+                                    @Value("${bikestore.import.chunk-size:500}") int chunkSize) {
+        super();
+        this.categoryCache = categoryCache;
+        this.productDao = productDao;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.productChangeSequence = productChangeSequence;
+        this.chunkSize = Math.max(chunkSize, 1);
+    }
+
+    /**
+     * REST Request for importing the Products of an EXCEL or CSV file.
+     * The columns are those of the exported file: ID (ignored, new IDs are assigned), name, price, quantity and
+     * the name of the Category.
+     * @param inputStream The content of the file.
+     * @return OK with the number of Products imported and the rows rejected, or ERROR if the file cannot be read.
+     */
+    @Override
+    public ResponseEntity<ProductImportResponseRest> importProducts(InputStream inputStream) {
+        ProductImportResponseRest response = new ProductImportResponseRest();
+        ProductImportResponse result = response.getProductImportResponse();
+
+        Map<String, Category> categories = new HashMap<>();
+        categoryCache.findAll().stream().filter((category) -> category.getName() != null).forEach((category) ->
+                categories.putIfAbsent(category.getName().trim().toLowerCase(Locale.ROOT), category));
+
+        List<ImportRow> chunk = new ArrayList<>(chunkSize);
+
+        try {
+            ProductSheetReader.read(inputStream, (rowNumber, cells) -> {
+                Product product = toProduct(rowNumber, cells, categories, result);
+                if (product != null) {
+                    chunk.add(new ImportRow(rowNumber, product));
+                }
+                if (chunk.size() == chunkSize) {
+                    saveChunk(chunk, result);
+                    chunk.clear();
+                }
+            });
+            saveChunk(chunk, result);
+        } catch (IOException e) {
+            e.getStackTrace();
+            response.setMetadata("ERROR", "-1", "The file could not be read");
+            return new ResponseEntity<ProductImportResponseRest>(response, HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            e.getStackTrace();
+            response.setMetadata("ERROR", "-1", "INTERNAL SERVER ERROR");
+            return new ResponseEntity<ProductImportResponseRest>(response, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+
+        if (result.getImportedCount() == 0 && result.getRejectedCount() > 0) {
+            response.setMetadata("ERROR", "-1", "No Products imported");
+            return new ResponseEntity<ProductImportResponseRest>(response, HttpStatus.BAD_REQUEST);
+        }
+        response.setMetadata("OK", "00", result.getRejectedCount() == 0 ? "Products imported"
+                : "Products imported, " + result.getRejectedCount() + " rows rejected");
+        return new ResponseEntity<ProductImportResponseRest>(response, HttpStatus.OK);
+    }
+
+    // Builds the Product of a row, or rejects the row and returns null if its data is not valid.
+    private Product toProduct(int rowNumber, List<String> cells, Map<String, Category> categories,
+                              ProductImportResponse result) {
+        String name = cell(cells, NAME_COLUMN);
+        if (name.isEmpty()) {
+            reject(result, rowNumber, "The name is required");
+            return null;
+        }
+
+        Integer price = parseAmount(cell(cells, PRICE_COLUMN));
+        if (price == null) {
+            reject(result, rowNumber, "The price must be a whole number not less than 0");
+            return null;
+        }
+
+        Integer quantity = parseAmount(cell(cells, QUANTITY_COLUMN));
+        if (quantity == null) {
+            reject(result, rowNumber, "The quantity must be a whole number not less than 0");
+            return null;
+        }
+
+        String categoryName = cell(cells, CATEGORY_COLUMN);
+        Category category = categories.get(categoryName.toLowerCase(Locale.ROOT));
+        if (category == null) {
+            reject(result, rowNumber, "Category not found: " + categoryName);
+            return null;
+        }
+
+        Product product = new Product();
+        product.setName(name);
+        product.setPrice(price);
+        product.setQuantity(quantity);
+        product.setCategory(category);
+        return product;
+    }
+
+    private void saveChunk(List<ImportRow> chunk, ProductImportResponse result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult((status) -> save(chunk));
+            result.setImportedCount(result.getImportedCount() + chunk.size());
+        } catch (Exception e) {
+            for (ImportRow row : chunk) {
+                // The ID assigned in the failed chunk was rolled back with it.
+                row.product().setId(null);
+                try {
+                    transactionTemplate.executeWithoutResult((status) -> save(List.of(row)));
+                    result.setImportedCount(result.getImportedCount() + 1);
+                } catch (Exception rowException) {
+                    reject(result, row.rowNumber(), "The Product could not be saved");
+                }
+            }
+        }
+    }
+
+    private void save(List<ImportRow> rows) {
+        List<Product> products = rows.stream().map(ImportRow::product).toList();
+        long changeSeq = productChangeSequence.next(products.size());
+        for (Product product : products) {
+            product.setChangeSeq(changeSeq++);
+        }
+        productDao.saveAll(products);
+        entityManager.flush();
+
+        products.forEach((product) ->
+                eventPublisher.publishEvent(ProductChangedEvent.created(ProductSnapshot.of(product))));
+        // The saved Products are not needed anymore: the persistence context does not grow with the file.
+        entityManager.clear();
+    }
+
+    private static void reject(ProductImportResponse result, int rowNumber, String message) {
+        result.setRejectedCount(result.getRejectedCount() + 1);
+        if (result.getErrorsList().size() < MAX_REPORTED_ERRORS) {
+            result.getErrorsList().add(new ProductImportError(rowNumber, message));
+        }
+    }
+
+    private static String cell(List<String> cells, int column) {
+        return column < cells.size() ? cells.get(column).trim() : "";
+    }
+
+    private static Integer parseAmount(String value) {
+        try {
+            int amount = Integer.parseInt(value);
+            return amount < 0 ? null : amount;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private record ImportRow(int rowNumber, Product product) {
+    }
+
+}
@@ -0,0 +1,168 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.withnacho.bikestore.demo.dao.IProductDao;
+import com.withnacho.bikestore.demo.dao.ProductNameProjection;
+import com.withnacho.bikestore.demo.event.ProductChangedEvent;
+import com.withnacho.bikestore.demo.event.ProductSnapshot;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * In-memory trigram index over the names of the Products, so searching by part of a name does not scan the whole
+ * product table (LIKE '%name%' cannot use an index). It is built on startup and kept up to date with the committed
+ * changes of the Products. Until it is built, isReady() is false and searches must go to the DB.
+ */
+@Component
+public class ProductNameIndex {
+
+    private static final int GRAM = 3;
+
+    private final IProductDao productDao;
+
+    // Lower case name of every Product, by ID.
+    private final Map<Long, String> names = new ConcurrentHashMap<>();
+    // IDs of the Products whose name contains each trigram.
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+    // Changes applied while the index was being built, which the (older) data of the build must not override.
+    private final Set<Long> changedWhileBuilding = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private volatile boolean ready;
+
+    public ProductNameIndex(IProductDao productDao) {
+        this.productDao = productDao;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Finds the Products whose name contains the given text, ignoring case.
+     * @param text The text the names must contain.
+     * @return The IDs of the Products found, in ascending order.
+     */
+    public List<Long> search(String text) {
+        String query = text.toLowerCase(Locale.ROOT);
+        List<Long> ids = new ArrayList<>();
+
+        if (query.length() < GRAM) {
+            names.forEach((id, name) -> {
+                if (name.contains(query)) {
+                    ids.add(id);
+                }
+            });
+        } else {
+            List<Set<Long>> candidates = new ArrayList<>();
+            for (String gram : grams(query)) {
+                Set<Long> posting = postings.get(gram);
+                if (posting == null) {
+                    return ids;
+                }
+                candidates.add(posting);
+            }
+            candidates.sort(Comparator.comparingInt(Set::size));
+
+            // Every trigram must match; the smallest posting list drives the intersection and the name itself is
+            // checked at the end, as having all the trigrams does not mean having them in sequence.
+            for (Long id : candidates.get(0)) {
+                boolean all = true;
+                for (int i = 1; i < candidates.size() && all; i++) {
+                    all = candidates.get(i).contains(id);
+                }
+                String name = names.get(id);
+                if (all && name != null && name.contains(query)) {
+                    ids.add(id);
+                }
+            }
+        }
+
+        Collections.sort(ids);
+        return ids;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        List<ProductNameProjection> products = productDao.findAllNames();
+
+        writeLock.lock();
+        try {
+            products.forEach((product) -> {
+                if (!changedWhileBuilding.contains(product.getId())) {
+                    add(product.getId(), product.getName());
+                }
+            });
+            changedWhileBuilding.clear();
+            ready = true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        // Stock and price changes do not touch the names.
+        if (!event.changesName()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            if (!ready) {
+                changedWhileBuilding.add(event.productId());
+            }
+            remove(event.productId());
+            if (event.after() != null) {
+                ProductSnapshot after = event.after();
+                add(after.id(), after.name());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void add(Long id, String name) {
+        if (name == null) {
+            return;
+        }
+        String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        names.put(id, lowerCaseName);
+        for (String gram : grams(lowerCaseName)) {
+            postings.computeIfAbsent(gram, (key) -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    private void remove(Long id) {
+        String name = names.remove(id);
+        if (name == null) {
+            return;
+        }
+        for (String gram : grams(name)) {
+            postings.computeIfPresent(gram, (key, posting) -> {
+                posting.remove(id);
+                return posting.isEmpty() ? null : posting;
+            });
+        }
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+}
@@ -0,0 +1,319 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.withnacho.bikestore.demo.dao.IProductDao;
+import com.withnacho.bikestore.demo.dao.ProductNameProjection;
+import com.withnacho.bikestore.demo.event.ProductChangedEvent;
+import com.withnacho.bikestore.demo.response.ProductSuggestion;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * In-memory autocomplete over the names of the Products. Names are kept in sorted arrays, so the Products whose name
+ * starts with a prefix are found with a binary search and read sequentially, without touching the DB. A committed
+ * change does not copy those arrays: it goes to two small sorted arrays of names added and removed since, and these
+ * are merged into the main ones in a single pass once they hold about the square root of the number of names. The
+ * arrays are never modified once published (copy on write), so reads never lock.
+ */
+@Component
+public class ProductNameSuggester {
+
+    // Smallest number of pending changes that triggers a merge, for small catalogs.
+    private static final int MIN_CHANGES_TO_MERGE = 64;
+
+    private final IProductDao productDao;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Changes committed while the arrays were being built, replayed on top of them.
+    private final List<ProductChangedEvent> changedWhileBuilding = new ArrayList<>();
+
+    private volatile Index index;
+
+    public ProductNameSuggester(IProductDao productDao) {
+        this.productDao = productDao;
+    }
+
+    public boolean isReady() {
+        return index != null;
+    }
+
+    /**
+     * Finds the Products whose name starts with the given prefix, ignoring case.
+     * @param prefix The beginning of the names.
+     * @param limit The maximum number of suggestions.
+     * @return The suggestions, sorted by name.
+     */
+    public List<ProductSuggestion> suggest(String prefix, int limit) {
+        Index current = index;
+        List<ProductSuggestion> suggestions = new ArrayList<>();
+        if (current == null) {
+            return suggestions;
+        }
+
+        String key = prefix.toLowerCase(Locale.ROOT);
+        Names names = current.names;
+        Names added = current.added;
+        int i = names.lowerBound(key);
+        int j = added.lowerBound(key);
+
+        // Both arrays are read in order, as in a merge, skipping the names removed.
+        while (suggestions.size() < limit) {
+            boolean inNames = i < names.size() && names.keys[i].startsWith(key);
+            boolean inAdded = j < added.size() && added.keys[j].startsWith(key);
+            if (!inNames && !inAdded) {
+                break;
+            }
+
+            if (inAdded && (!inNames || Names.compare(added, j, names, i) < 0)) {
+                suggestions.add(new ProductSuggestion(added.ids[j], added.names[j]));
+                j++;
+            } else {
+                if (current.removed.find(names.ids[i], names.keys[i]) < 0) {
+                    suggestions.add(new ProductSuggestion(names.ids[i], names.names[i]));
+                }
+                i++;
+            }
+        }
+        return suggestions;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        List<ProductNameProjection> products = productDao.findAllNames().stream()
+                .filter((product) -> product.getName() != null)
+                .sorted(Comparator.comparing((ProductNameProjection product) -> product.getName().toLowerCase(Locale.ROOT))
+                        .thenComparing(ProductNameProjection::getId))
+                .toList();
+
+        Names built = new Names(products.size());
+        for (int i = 0; i < products.size(); i++) {
+            built.set(i, products.get(i).getId(), products.get(i).getName());
+        }
+
+        writeLock.lock();
+        try {
+            Index rebuilt = new Index(built, Names.EMPTY, Names.EMPTY);
+            // Applying a change is idempotent, so it does not matter whether the build already saw it.
+            for (ProductChangedEvent event : changedWhileBuilding) {
+                rebuilt = rebuilt.apply(event);
+            }
+            changedWhileBuilding.clear();
+            index = rebuilt;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        // Stock and price changes do not touch the names.
+        if (!event.changesName()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            if (index == null) {
+                changedWhileBuilding.add(event);
+            } else {
+                index = index.apply(event);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * The names at a given moment: the main arrays, minus the names removed and plus the names added since they
+     * were merged. The names removed are always in the main arrays; a name added is only there if it is removed too,
+     * when it changed case.
+     */
+    private static final class Index {
+
+        private final Names names;
+        private final Names added;
+        private final Names removed;
+
+        private Index(Names names, Names added, Names removed) {
+            this.names = names;
+            this.added = added;
+            this.removed = removed;
+        }
+
+        private Index apply(ProductChangedEvent event) {
+            Index current = this;
+            if (event.before() != null && event.before().name() != null) {
+                current = current.without(event.before().id(), event.before().name());
+            }
+            if (event.after() != null && event.after().name() != null) {
+                current = current.with(event.after().id(), event.after().name());
+            }
+            return current.merged();
+        }
+
+        private Index with(long id, String name) {
+            // Drops the entry of the same lower case name first, as its case may differ.
+            Index current = without(id, name);
+            int position = names.find(id, name.toLowerCase(Locale.ROOT));
+            if (position >= 0 && names.names[position].equals(name)) {
+                return new Index(names, current.added, current.removed.without(id, name));
+            }
+            return new Index(names, current.added.with(id, name), current.removed);
+        }
+
+        private Index without(long id, String name) {
+            String key = name.toLowerCase(Locale.ROOT);
+            if (added.find(id, key) >= 0) {
+                return new Index(names, added.without(id, name), removed);
+            }
+            if (names.find(id, key) < 0 || removed.find(id, key) >= 0) {
+                return this;
+            }
+            return new Index(names, added, removed.with(id, name));
+        }
+
+        // Merges the changes into the main arrays once they are many enough to make copying them costly.
+        private Index merged() {
+            int changes = added.size() + removed.size();
+            if (changes < Math.max(MIN_CHANGES_TO_MERGE, (int) Math.sqrt(names.size()))) {
+                return this;
+            }
+
+            Names merged = new Names(names.size() + added.size() - removed.size());
+            int i = 0;
+            int j = 0;
+            int r = 0;
+            int m = 0;
+            while (i < names.size() || j < added.size()) {
+                if (j < added.size() && (i >= names.size() || Names.compare(added, j, names, i) < 0)) {
+                    merged.copy(m++, added, j++);
+                } else {
+                    if (r < removed.size() && Names.compare(removed, r, names, i) == 0) {
+                        r++;
+                    } else {
+                        merged.copy(m++, names, i);
+                    }
+                    i++;
+                }
+            }
+            return new Index(merged, Names.EMPTY, Names.EMPTY);
+        }
+    }
+
+    /**
+     * Parallel arrays sorted by lower case name and then by ID. The lower case key shares the name instance when the
+     * name is already in lower case.
+     */
+    private static final class Names {
+
+        private static final Names EMPTY = new Names(0);
+
+        private final String[] keys;
+        private final String[] names;
+        private final long[] ids;
+
+        private Names(int size) {
+            this.keys = new String[size];
+            this.names = new String[size];
+            this.ids = new long[size];
+        }
+
+        private static int compare(Names first, int firstIndex, Names second, int secondIndex) {
+            int comparison = first.keys[firstIndex].compareTo(second.keys[secondIndex]);
+            return comparison != 0 ? comparison : Long.compare(first.ids[firstIndex], second.ids[secondIndex]);
+        }
+
+        private int size() {
+            return ids.length;
+        }
+
+        private void set(int index, long id, String name) {
+            String key = name.toLowerCase(Locale.ROOT);
+            keys[index] = key.equals(name) ? name : key;
+            names[index] = name;
+            ids[index] = id;
+        }
+
+        private void copy(int index, Names from, int fromIndex) {
+            keys[index] = from.keys[fromIndex];
+            names[index] = from.names[fromIndex];
+            ids[index] = from.ids[fromIndex];
+        }
+
+        // First position whose key is not lower than the given one.
+        private int lowerBound(String key) {
+            int low = 0;
+            int high = size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys[middle].compareTo(key) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        // Position of the given entry, or -(insertion point) - 1 if it is not present.
+        private int find(long id, String key) {
+            int low = 0;
+            int high = size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = keys[middle].compareTo(key);
+                if (comparison == 0) {
+                    comparison = Long.compare(ids[middle], id);
+                }
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private Names with(long id, String name) {
+            int position = find(id, name.toLowerCase(Locale.ROOT));
+            if (position >= 0) {
+                return this;
+            }
+            int insertion = -(position + 1);
+
+            Names copy = new Names(size() + 1);
+            System.arraycopy(keys, 0, copy.keys, 0, insertion);
+            System.arraycopy(names, 0, copy.names, 0, insertion);
+            System.arraycopy(ids, 0, copy.ids, 0, insertion);
+            copy.set(insertion, id, name);
+            System.arraycopy(keys, insertion, copy.keys, insertion + 1, size() - insertion);
+            System.arraycopy(names, insertion, copy.names, insertion + 1, size() - insertion);
+            System.arraycopy(ids, insertion, copy.ids, insertion + 1, size() - insertion);
+            return copy;
+        }
+
+        private Names without(long id, String name) {
+            int position = find(id, name.toLowerCase(Locale.ROOT));
+            if (position < 0) {
+                return this;
+            }
+
+            Names copy = new Names(size() - 1);
+            System.arraycopy(keys, 0, copy.keys, 0, position);
+            System.arraycopy(names, 0, copy.names, 0, position);
+            System.arraycopy(ids, 0, copy.ids, 0, position);
+            System.arraycopy(keys, position + 1, copy.keys, position, size() - position - 1);
+            System.arraycopy(names, position + 1, copy.names, position, size() - position - 1);
+            System.arraycopy(ids, position + 1, copy.ids, position, size() - position - 1);
+            return copy;
+        }
+    }
+
+}
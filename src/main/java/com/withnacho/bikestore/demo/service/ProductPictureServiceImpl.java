@@ -0,0 +1,244 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.CRC32;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.withnacho.bikestore.demo.dao.IProductPictureDao;
+import com.withnacho.bikestore.demo.entity.PictureCodec;
+import com.withnacho.bikestore.demo.entity.ProductPicture;
+import com.withnacho.bikestore.demo.util.PictureFormat;
+import com.withnacho.bikestore.demo.util.ZLibCodec;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@Service
+public class ProductPictureServiceImpl implements IProductPictureService {
+
+    // Fixed cost of an entry besides the picture bytes (key, record, array header).
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    // Number of generation counters; Products sharing one only cost each other a cache miss.
+    private static final int GENERATIONS = 1024;
+
+    private IProductPictureDao productPictureDao;
+    private ZLibCodec zLibCodec;
+    private PictureDecodeExecutor pictureDecodeExecutor;
+    private EntityManager entityManager;
+    private Cache<Long, DecodedPicture> decodedPictures;
+    private SingleFlight<Long, Optional<DecodedPicture>> pictureReads;
+    // Incremented on every invalidation of a picture, so a read that raced with a change is not kept.
+    private AtomicLongArray generations = new AtomicLongArray(GENERATIONS);
+
+    public ProductPictureServiceImpl(IProductPictureDao productPictureDao, ZLibCodec zLibCodec,
+                                     PictureDecodeExecutor pictureDecodeExecutor, EntityManager entityManager,
+                                     @Value("${bikestore.picture.cache.max-bytes}") long cacheMaxBytes,
+                                     MeterRegistry meterRegistry) {
+        super();
+        this.productPictureDao = productPictureDao;
+        this.zLibCodec = zLibCodec;
+        this.pictureDecodeExecutor = pictureDecodeExecutor;
+        this.entityManager = entityManager;
+        this.decodedPictures = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxBytes)
+                .weigher((Long productId, DecodedPicture picture) -> picture.data().length + ENTRY_OVERHEAD_BYTES)
+                .recordStats()
+                .build();
+        // Exposes cache.gets (hit/miss), cache.evictions and cache.size in /actuator/metrics.
+        CaffeineCacheMetrics.monitor(meterRegistry, decodedPictures, "productPictures");
+        this.pictureReads = new SingleFlight<>("productPicture", meterRegistry);
+    }
+
+    /**
+     * Saves (or replaces) the picture of a Product together with the metadata needed to serve it: content type,
+     * original size and checksum. Formats that are already compressed (JPEG, PNG, GIF, WebP) are stored as they are,
+     * the rest are compressed with zlib.
+     * @param productId The ID of the Product the picture belongs to.
+     * @param picture The original (uncompressed) picture.
+     */
+    @Override
+    @Transactional
+    public void savePicture(Long productId, byte[] picture) {
+        savePicture(productId, encodePicture(picture));
+    }
+
+    /**
+     * Computes the metadata of a picture and compresses it if needed, without storing it, so it can be done before
+     * the Product it belongs to has an ID.
+     * @param picture The original (uncompressed) picture.
+     * @return The picture to be stored, without the ID of its Product.
+     */
+    @Override
+    public ProductPicture encodePicture(byte[] picture) {
+        CRC32 checksum = new CRC32();
+        checksum.update(picture);
+        PictureFormat format = PictureFormat.sniff(picture, picture.length);
+
+        ProductPicture productPicture = new ProductPicture();
+        productPicture.setContentType(format.getContentType());
+        productPicture.setSize(picture.length);
+        productPicture.setChecksum(checksum.getValue());
+
+        if (format.isCompressed()) {
+            productPicture.setCodec(PictureCodec.RAW);
+            productPicture.setData(picture);
+        } else {
+            productPicture.setCodec(PictureCodec.ZLIB);
+            productPicture.setData(zLibCodec.compress(picture));
+        }
+        return productPicture;
+    }
+
+    /**
+     * Saves (or replaces) a picture encoded by encodePicture. An existing picture is overwritten in place and a
+     * missing one is inserted, so the old bytes are never read.
+     * @param productId The ID of the Product the picture belongs to.
+     * @param picture The encoded picture.
+     */
+    @Override
+    @Transactional
+    public void savePicture(Long productId, ProductPicture picture) {
+        picture.setProductId(productId);
+        int updated = productPictureDao.updatePicture(productId, picture.getContentType(), picture.getSize(),
+                picture.getChecksum(), picture.getCodec(), picture.getData());
+        if (updated == 0) {
+            entityManager.persist(picture);
+        }
+        invalidate(productId);
+    }
+
+    /**
+     * Gets the stored (compressed) picture of a Product.
+     * @param productId The ID of the Product whose picture is to be found.
+     * @return The picture or empty if the Product does not exist or has no picture.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<ProductPicture> findPicture(Long productId) {
+        return productPictureDao.findById(productId);
+    }
+
+    /**
+     * Gets the decompressed picture of a Product. Popular pictures are served from a cache bounded by
+     * bikestore.picture.cache.max-bytes, so they are not decompressed again on every request, and concurrent requests
+     * for a picture that is not cached share a single read and decompression.
+     * @param productId The ID of the Product whose picture is to be found.
+     * @return The picture or empty if the Product does not exist or has no picture.
+     */
+    @Override
+    public Optional<DecodedPicture> findDecodedPicture(Long productId) {
+        DecodedPicture cached = decodedPictures.getIfPresent(productId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        // Loaded outside the cache: a loading get() would run the query inside a synchronized block,
+        // pinning the carrier thread when requests run on virtual threads.
+        return pictureReads.execute(productId, () -> {
+            long readGeneration = generation(productId);
+            Optional<DecodedPicture> picture = productPictureDao.findById(productId)
+                    .map((p) -> new DecodedPicture(p.getContentType(), p.getChecksum(), decode(p)));
+            picture.ifPresent((p) -> cache(productId, p, readGeneration));
+            return picture;
+        });
+    }
+
+    /**
+     * Gets the decompressed pictures of several Products. The pictures that are not cached are read with a single
+     * query and decoded in parallel by PictureDecodeExecutor.
+     * @param productIds The IDs of the Products whose pictures are to be found.
+     * @return The pictures by Product ID. Products without picture are not included.
+     */
+    @Override
+    public Map<Long, DecodedPicture> findDecodedPictures(Collection<Long> productIds) {
+        Map<Long, DecodedPicture> decodedById = new HashMap<>(decodedPictures.getAllPresent(productIds));
+        List<Long> missingIds = new ArrayList<>();
+        Map<Long, Long> readGenerations = new HashMap<>();
+        for (Long productId : productIds) {
+            if (!decodedById.containsKey(productId) && !readGenerations.containsKey(productId)) {
+                missingIds.add(productId);
+                readGenerations.put(productId, generation(productId));
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return decodedById;
+        }
+
+        List<ProductPicture> pictures = new ArrayList<>();
+        productPictureDao.findAllById(missingIds).forEach(pictures::add);
+
+        List<DecodedPicture> decoded = pictureDecodeExecutor.decodeAll(pictures,
+                (picture) -> new DecodedPicture(picture.getContentType(), picture.getChecksum(), decode(picture)));
+
+        for (int i = 0; i < pictures.size(); i++) {
+            Long productId = pictures.get(i).getProductId();
+            decodedById.put(productId, decoded.get(i));
+            cache(productId, decoded.get(i), readGenerations.get(productId));
+        }
+        return decodedById;
+    }
+
+    // Cached only if the picture was not changed since it was read. The generation is checked after the put, and
+    // invalidate increments it before dropping the entry, so one of both always drops a picture read before a change.
+    private void cache(Long productId, DecodedPicture picture, long readGeneration) {
+        decodedPictures.put(productId, picture);
+        if (generation(productId) != readGeneration) {
+            decodedPictures.invalidate(productId);
+        }
+    }
+
+    private long generation(Long productId) {
+        return generations.get(Math.floorMod(productId.hashCode(), GENERATIONS));
+    }
+
+    private byte[] decode(ProductPicture picture) {
+        if (picture.getCodec() == PictureCodec.RAW) {
+            return picture.getData();
+        }
+        return zLibCodec.decompress(picture.getData(), picture.getSize());
+    }
+
+    /**
+     * Deletes the picture of a Product, if it has one.
+     * @param productId The ID of the Product whose picture is to be deleted.
+     */
+    @Override
+    @Transactional
+    public void deletePicture(Long productId) {
+        productPictureDao.deleteByProductId(productId);
+        invalidate(productId);
+    }
+
+    // The entry is dropped again after the commit, and reads started before it are not cached, in case a concurrent
+    // read got the old picture meanwhile.
+    private void invalidate(Long productId) {
+        changed(productId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    changed(productId);
+                }
+            });
+        }
+    }
+
+    private void changed(Long productId) {
+        generations.incrementAndGet(Math.floorMod(productId.hashCode(), GENERATIONS));
+        decodedPictures.invalidate(productId);
+    }
+
+}
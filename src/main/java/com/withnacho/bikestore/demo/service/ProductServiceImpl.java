@@ -1,31 +1,106 @@
 package com.withnacho.bikestore.demo.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
-import com.withnacho.bikestore.demo.dao.ICategoryDao;
 import com.withnacho.bikestore.demo.dao.IProductDao;
+import com.withnacho.bikestore.demo.dao.IProductTombstoneDao;
+import com.withnacho.bikestore.demo.dao.VersionAggregateProjection;
 import com.withnacho.bikestore.demo.entity.Category;
 import com.withnacho.bikestore.demo.entity.Product;
+import com.withnacho.bikestore.demo.entity.ProductPicture;
+import com.withnacho.bikestore.demo.entity.ProductTombstone;
+import com.withnacho.bikestore.demo.event.ProductChangedEvent;
+import com.withnacho.bikestore.demo.event.ProductSnapshot;
+import com.withnacho.bikestore.demo.response.PriceAdjustmentResponse;
+import com.withnacho.bikestore.demo.response.PriceAdjustmentResponseRest;
+import com.withnacho.bikestore.demo.response.ProductChangesResponseRest;
 import com.withnacho.bikestore.demo.response.ProductResponseRest;
-import com.withnacho.bikestore.demo.util.Util;
+import com.withnacho.bikestore.demo.response.ProductSuggestionResponseRest;
+import com.withnacho.bikestore.demo.util.EntityTags;
+import com.withnacho.bikestore.demo.util.ProductExcelExporter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.OptimisticLockException;
+import org.hibernate.Hibernate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
 public class ProductServiceImpl implements IProductService {
 
-    private ICategoryDao categoryDao;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int DEFAULT_SUGGESTIONS = 10;
+    private static final int MAX_SUGGESTIONS = 50;
+    private static final int MAX_BATCH_IDS = 500;
+    private static final int DEFAULT_CHANGES = 500;
+    private static final int MAX_CHANGES = 1000;
+    private static final int MAX_QUANTITY_DELTA = 100000;
+    private static final BigDecimal MIN_PRICE_PERCENT = BigDecimal.valueOf(-100);
+    private static final BigDecimal MAX_PRICE_PERCENT = BigDecimal.valueOf(1000);
+
+    private CategoryCache categoryCache;
     private IProductDao productDao;
-
-    public ProductServiceImpl(ICategoryDao categoryDao, IProductDao productDao) {
+    private IProductPictureService productPictureService;
+    private EntityManager entityManager;
+    private ProductNameIndex productNameIndex;
+    private ProductNameSuggester productNameSuggester;
+    private ApplicationEventPublisher eventPublisher;
+    private IProductTombstoneDao productTombstoneDao;
+    private ProductChangeSequence productChangeSequence;
+    private QuantityWriteBehind quantityWriteBehind;
+    private PriceAdjustmentJobs priceAdjustmentJobs;
+    private TransactionTemplate readOnlyTransaction;
+    private SingleFlight<Long, ResponseEntity<ProductResponseRest>> productByIdReads;
+    private SingleFlight<NameSearch, ResponseEntity<ProductResponseRest>> productByNameReads;
+
+    public ProductServiceImpl(CategoryCache categoryCache, IProductDao productDao,
+                              IProductPictureService productPictureService, EntityManager entityManager,
+                              ProductNameIndex productNameIndex, ProductNameSuggester productNameSuggester,
+                              ApplicationEventPublisher eventPublisher, IProductTombstoneDao productTombstoneDao,
+                              ProductChangeSequence productChangeSequence, QuantityWriteBehind quantityWriteBehind,
+                              PriceAdjustmentJobs priceAdjustmentJobs, PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry) {
         super();
-        this.categoryDao = categoryDao;
+        this.categoryCache = categoryCache;
         this.productDao = productDao;
+        this.productPictureService = productPictureService;
+        this.entityManager = entityManager;
+        this.productNameIndex = productNameIndex;
+        this.productNameSuggester = productNameSuggester;
+        this.eventPublisher = eventPublisher;
+        this.productTombstoneDao = productTombstoneDao;
+        this.productChangeSequence = productChangeSequence;
+        this.quantityWriteBehind = quantityWriteBehind;
+        this.priceAdjustmentJobs = priceAdjustmentJobs;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.productByIdReads = new SingleFlight<>("productById", meterRegistry);
+        this.productByNameReads = new SingleFlight<>("productByName", meterRegistry);
     }
 
     /**
@@ -42,7 +117,7 @@ public class ProductServiceImpl implements IProductService {
         List<Product> productsList = new ArrayList<>();
 
         try {
-            Optional<Category> category = categoryDao.findById(categoryId);
+            Optional<Category> category = categoryCache.findById(categoryId);
 
             if( category.isPresent()) {
                 product.setCategory(category.get());
@@ -51,9 +126,21 @@ public class ProductServiceImpl implements IProductService {
                 return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.NOT_FOUND);
             }
 
+            ProductPicture picture = product.getPicture() == null ? null
+                    : productPictureService.encodePicture(product.getPicture());
             Product productSaved = productDao.save(product);
 
             if (productSaved != null) {
+                if (picture != null) {
+                    productPictureService.savePicture(productSaved.getId(), picture);
+                    productSaved.setPicture(null);
+                }
+                // The Product and its picture are inserted before the number is taken, to keep the counter locked
+                // briefly. Setting the number is then a one-column UPDATE, which does not change the version.
+                entityManager.flush();
+                productSaved.setChangeSeq(productChangeSequence.next(1));
+                entityManager.flush();
+                eventPublisher.publishEvent(ProductChangedEvent.created(ProductSnapshot.of(productSaved)));
                 productsList.add(productSaved);
                 productsResponse.getProductResponse().setProductsList(productsList);
                 productsResponse.setMetadata("OK", "00", "Product saved");
@@ -71,12 +158,31 @@ public class ProductServiceImpl implements IProductService {
 
     /**
      * REST Request for getting a Product by its ID.
+     * Concurrent requests for the same Product share a single read. The quantity includes the updates recorded
+     * but not yet written to the DB, except for callers inside a transaction, which read the DB only.
      * @param id The ID of the Product to be found.
      * @return OK if the Product was found or ERROR if it was not or something wrong happened.
      */
     @Override
-    @Transactional (readOnly = true)
     public ResponseEntity<ProductResponseRest> findProductById(Long id) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return readProductById(id);
+        }
+        // The Product is detached before the pending updates are added to it, as with open-in-view it would still
+        // be managed by the persistence context of the request, which must not see the pending quantity.
+        return productByIdReads.execute(id, () -> quantityWriteBehind.read(id,
+                () -> readOnlyTransaction.execute((status) -> detach(readProductById(id))), this::addPendingQuantity));
+    }
+
+    private ResponseEntity<ProductResponseRest> detach(ResponseEntity<ProductResponseRest> response) {
+        List<Product> productsList = response.getBody().getProductResponse().getProductsList();
+        if (productsList != null) {
+            productsList.forEach(entityManager::detach);
+        }
+        return response;
+    }
+
+    private ResponseEntity<ProductResponseRest> readProductById(Long id) {
 
         ProductResponseRest productsResponse = new ProductResponseRest();
         List<Product> productsList = new ArrayList<>();
@@ -85,9 +191,8 @@ public class ProductServiceImpl implements IProductService {
             Optional<Product> product = productDao.findById(id);
 
             if( product.isPresent()) {
-
-                byte[] imageDescompressed = Util.decompressZLib(product.get().getPicture());
-                product.get().setPicture(imageDescompressed);
+                // Loaded now, as the Product may be sent by other threads after this transaction.
+                Hibernate.initialize(product.get().getCategory());
                 productsList.add(product.get());
                 productsResponse.getProductResponse().setProductsList(productsList);
                 productsResponse.setMetadata("OK", "00", "Product found");
@@ -105,25 +210,37 @@ public class ProductServiceImpl implements IProductService {
 
     /**
      * REST Request for getting a Product by its name.
+     * Concurrent identical searches share a single read.
      * @param name The name of the Product to be found.
+     * @param inlinePictures True to embed the pictures of the Products in the response.
      * @return OK if the Product was found or ERROR if it was not or something wrong happened.
      */
     @Override
-    @Transactional (readOnly = true)
-    public ResponseEntity<ProductResponseRest> findProductByName(String name) {
+    public ResponseEntity<ProductResponseRest> findProductByName(String name, boolean inlinePictures) {
+        return coalesce(productByNameReads, new NameSearch(name, inlinePictures),
+                () -> readProductByName(name, inlinePictures));
+    }
+
+    private ResponseEntity<ProductResponseRest> readProductByName(String name, boolean inlinePictures) {
         ProductResponseRest response = new ProductResponseRest();
         List<Product> productsList = new ArrayList<>();
         List<Product> auxiliaryProductsList = new ArrayList<>();
 
         try {
-            auxiliaryProductsList = productDao.findByNameContainingIgnoreCase(name);
+            if (productNameIndex.isReady()) {
+                List<Long> ids = productNameIndex.search(name);
+                if (!ids.isEmpty()) {
+                    auxiliaryProductsList = productDao.findWithCategoryByIdInOrderByIdAsc(ids);
+                }
+            } else {
+                auxiliaryProductsList = productDao.findWithCategoryByNameContainingIgnoreCase(name);
+            }
 
             if( auxiliaryProductsList.size() > 0) {
-                auxiliaryProductsList.stream().forEach( (element) -> {
-                    byte[] imageDescompressed = Util.decompressZLib(element.getPicture());
-                    element.setPicture(imageDescompressed);
-                    productsList.add(element);
-                });
+                productsList.addAll(auxiliaryProductsList);
+                if (inlinePictures) {
+                    inlinePictures(productsList);
+                }
                 response.getProductResponse().setProductsList(productsList);
                 response.setMetadata("OK", "00", "Products found");
             } else {
@@ -150,7 +267,20 @@ public class ProductServiceImpl implements IProductService {
 
         try {
             //delete producto by id
-            productDao.deleteById(id);
+            Optional<Product> product = productDao.findById(id);
+
+            if (product.isPresent()) {
+                ProductSnapshot before = ProductSnapshot.of(product.get());
+                productPictureService.deletePicture(id);
+                productDao.delete(product.get());
+
+                ProductTombstone tombstone = new ProductTombstone();
+                tombstone.setProductId(id);
+                tombstone.setDeletedAt(Instant.now());
+                tombstone.setChangeSeq(productChangeSequence.next(1));
+                productTombstoneDao.save(tombstone);
+                eventPublisher.publishEvent(ProductChangedEvent.deleted(before));
+            }
             productsResponse.setMetadata("OK", "00", "Product deleted");
         } catch (Exception e) {
             e.getStackTrace();
@@ -162,24 +292,24 @@ public class ProductServiceImpl implements IProductService {
 
     /**
      * REST Request for getting all the Products in the DB.
+     * @param inlinePictures True to embed the pictures of the Products in the response.
      * @return OK if all the Products were retrieved or ERROR if something unexpected happened.
      */
     @Override
     @Transactional (readOnly = true)
-    public ResponseEntity<ProductResponseRest> findProducts() {
+    public ResponseEntity<ProductResponseRest> findProducts(boolean inlinePictures) {
         ProductResponseRest productsResponse = new ProductResponseRest();
         List<Product> productsList = new ArrayList<>();
         List<Product> auxiliaryProductsList = new ArrayList<>();
 
         try {
-            auxiliaryProductsList = (List<Product>) productDao.findAll();
+            auxiliaryProductsList = productDao.findAllWithCategory();
 
             if( auxiliaryProductsList.size() > 0) {
-                auxiliaryProductsList.stream().forEach( (p) -> {
-                    byte[] imageDescompressed = Util.decompressZLib(p.getPicture());
-                    p.setPicture(imageDescompressed);
-                    productsList.add(p);
-                });
+                productsList.addAll(auxiliaryProductsList);
+                if (inlinePictures) {
+                    inlinePictures(productsList);
+                }
                 productsResponse.getProductResponse().setProductsList(productsList);
                 productsResponse.setMetadata("OK", "00", "Products found");
             } else {
@@ -194,6 +324,106 @@ public class ProductServiceImpl implements IProductService {
         return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.OK);
     }
 
+    /**
+     * REST Request for getting several Products by their IDs with a single query.
+     * @param ids The IDs of the Products to be found. Repeated IDs are returned once.
+     * @param inlinePictures True to embed the pictures of the Products in the response.
+     * @return OK with the Products found, in the order of the IDs, and the IDs not found in the metadata,
+     * or ERROR if none was found or something wrong happened.
+     */
+    @Override
+    @Transactional (readOnly = true)
+    public ResponseEntity<ProductResponseRest> findProductsByIds(List<Long> ids, boolean inlinePictures) {
+        ProductResponseRest productsResponse = new ProductResponseRest();
+        List<Product> productsList = new ArrayList<>();
+
+        Set<Long> requestedIds = new LinkedHashSet<>();
+        if (ids != null) {
+            ids.stream().filter(Objects::nonNull).forEach(requestedIds::add);
+        }
+
+        if (requestedIds.isEmpty() || requestedIds.size() > MAX_BATCH_IDS) {
+            productsResponse.setMetadata("ERROR", "-1", "Between 1 and " + MAX_BATCH_IDS + " IDs must be requested");
+            return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.BAD_REQUEST);
+        }
+
+        try {
+            Map<Long, Product> productsById = new HashMap<>();
+            productDao.findWithCategoryByIdInOrderByIdAsc(requestedIds)
+                    .forEach((product) -> productsById.put(product.getId(), product));
+
+            List<Long> missingIds = new ArrayList<>();
+            for (Long id : requestedIds) {
+                Product product = productsById.get(id);
+                if (product != null) {
+                    productsList.add(product);
+                } else {
+                    missingIds.add(id);
+                }
+            }
+
+            if (productsList.isEmpty()) {
+                productsResponse.setMetadata("ERROR", "-1", "Products not found");
+                return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.NOT_FOUND);
+            }
+
+            if (inlinePictures) {
+                inlinePictures(productsList);
+            }
+            productsResponse.getProductResponse().setProductsList(productsList);
+            productsResponse.setMetadata("OK", "00", "Products found");
+            if (!missingIds.isEmpty()) {
+                productsResponse.setMetadata("WARNING", "01", "Products not found: " + missingIds.stream()
+                        .map(String::valueOf).collect(Collectors.joining(",")));
+            }
+        } catch (Exception e) {
+            e.getStackTrace();
+            productsResponse.setMetadata("ERROR", "-1", "INTERNAL SERVER ERROR");
+            return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.OK);
+    }
+
+    /**
+     * REST Request for getting a page of Products using keyset (cursor) pagination.
+     * @param after ID of the last Product already received, or null to start from the beginning.
+     * @param limit Maximum number of Products of the page, or null to use the default page size.
+     * @param inlinePictures True to embed the pictures of the Products in the response.
+     * @return OK with the page of Products and the cursor of the next page or ERROR if something unexpected happened.
+     */
+    @Override
+    @Transactional (readOnly = true)
+    public ResponseEntity<ProductResponseRest> findProductsPage(Long after, Integer limit, boolean inlinePictures) {
+        ProductResponseRest productsResponse = new ProductResponseRest();
+        List<Product> productsList = new ArrayList<>();
+
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        long cursor = after == null ? 0L : after;
+
+        try {
+            // One extra row tells whether there is a next page without a COUNT query.
+            List<Product> auxiliaryProductsList = productDao.findByIdGreaterThanOrderByIdAsc(
+                    cursor, PageRequest.of(0, pageSize + 1));
+
+            boolean hasNext = auxiliaryProductsList.size() > pageSize;
+            productsList.addAll(auxiliaryProductsList.subList(0, Math.min(pageSize, auxiliaryProductsList.size())));
+            if (inlinePictures) {
+                inlinePictures(productsList);
+            }
+
+            productsResponse.getProductResponse().setProductsList(productsList);
+            if (hasNext) {
+                productsResponse.getProductResponse().setNextCursor(productsList.get(productsList.size() - 1).getId());
+            }
+            productsResponse.setMetadata("OK", "00", "Products found");
+        } catch (Exception e) {
+            e.getStackTrace();
+            productsResponse.setMetadata("ERROR", "-1", "INTERNAL SERVER ERROR");
+            return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.OK);
+    }
+
     /**
      * REST Request for updating a Product in the DB.
      * @param product The data of the Product to be updated.
@@ -208,7 +438,7 @@ public class ProductServiceImpl implements IProductService {
         List<Product> productsList = new ArrayList<>();
 
         try {
-            Optional<Category> category = categoryDao.findById(categoryId);
+            Optional<Category> category = categoryCache.findById(categoryId);
 
             if( category.isPresent()) {
                 product.setCategory(category.get());
@@ -220,15 +450,23 @@ public class ProductServiceImpl implements IProductService {
             Optional<Product> productSearch = productDao.findById(id);
 
             if (productSearch.isPresent()) {
+                ProductSnapshot before = ProductSnapshot.of(productSearch.get());
                 productSearch.get().setQuantity(product.getQuantity());
                 productSearch.get().setCategory(product.getCategory());
                 productSearch.get().setName(product.getName());
-                productSearch.get().setPicture(product.getPicture());
                 productSearch.get().setPrice(product.getPrice());
+                if (product.getPicture() != null) {
+                    productPictureService.savePicture(id, product.getPicture());
+                }
 
+                // Taken right before the flush, to keep the counter locked briefly.
+                productSearch.get().setChangeSeq(productChangeSequence.next(1));
                 Product productToUpdate = productDao.save(productSearch.get());
+                // The version is checked now, so a concurrent update is answered with a conflict.
+                entityManager.flush();
 
                 if (productToUpdate != null) {
+                    eventPublisher.publishEvent(ProductChangedEvent.updated(before, ProductSnapshot.of(productToUpdate)));
                     productsList.add(productToUpdate);
                     productsResponse.getProductResponse().setProductsList(productsList);
                     productsResponse.setMetadata("OK", "00", "Product updated");
@@ -240,6 +478,90 @@ public class ProductServiceImpl implements IProductService {
                 productsResponse.setMetadata("ERROR", "-1", "Product not updated");
                 return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.NOT_FOUND);
             }
+        } catch (OptimisticLockException | ObjectOptimisticLockingFailureException e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            productsResponse.setMetadata("ERROR", "-1", "Product modified by another request, try again");
+            return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.CONFLICT);
+        } catch (Exception e) {
+            e.getStackTrace();
+            productsResponse.setMetadata("ERROR", "-1", "INTERNAL SERVER ERROR");
+            return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.OK);
+    }
+
+    /**
+     * REST Request for updating some of the data of a Product. Only the columns that change are written, and the
+     * picture is only written if a new one is given.
+     * @param id The ID of the Product to be updated.
+     * @param name The new name, or null to keep it.
+     * @param price The new price, or null to keep it.
+     * @param quantity The new quantity, or null to keep it.
+     * @param categoryId Foreign key of the new Category, or null to keep it.
+     * @param picture The new picture, or null to keep it.
+     * @return OK if the Product was successfully updated or ERROR if it was not or something wrong happened.
+     */
+    @Override
+    @Transactional
+    public ResponseEntity<ProductResponseRest> patchProduct(Long id, String name, Integer price, Integer quantity,
+                                                            Long categoryId, byte[] picture) {
+        ProductResponseRest productsResponse = new ProductResponseRest();
+        List<Product> productsList = new ArrayList<>();
+
+        if (name == null && price == null && quantity == null && categoryId == null && picture == null) {
+            productsResponse.setMetadata("ERROR", "-1", "Nothing to update");
+            return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.BAD_REQUEST);
+        }
+
+        try {
+            Optional<Product> productSearch = productDao.findById(id);
+
+            if (productSearch.isEmpty()) {
+                productsResponse.setMetadata("ERROR", "-1", "Product not updated");
+                return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.NOT_FOUND);
+            }
+
+            Product product = productSearch.get();
+            ProductSnapshot before = ProductSnapshot.of(product);
+
+            if (categoryId != null && !categoryId.equals(before.categoryId())) {
+                Optional<Category> category = categoryCache.findById(categoryId);
+
+                if (category.isEmpty()) {
+                    productsResponse.setMetadata("ERROR", "-1", "Product Category not found");
+                    return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.NOT_FOUND);
+                }
+                product.setCategory(category.get());
+            }
+            if (name != null) {
+                product.setName(name);
+            }
+            if (price != null) {
+                product.setPrice(price);
+            }
+            if (quantity != null) {
+                product.setQuantity(quantity);
+            }
+
+            if (picture != null) {
+                productPictureService.savePicture(id, picture);
+            }
+
+            // A new picture alone leaves the row of the Product as it is.
+            if (!ProductSnapshot.of(product).equals(before)) {
+                product.setChangeSeq(productChangeSequence.next(1));
+                // The version is checked now, so a concurrent update is answered with a conflict.
+                entityManager.flush();
+                eventPublisher.publishEvent(ProductChangedEvent.updated(before, ProductSnapshot.of(product)));
+            }
+
+            productsList.add(product);
+            productsResponse.getProductResponse().setProductsList(productsList);
+            productsResponse.setMetadata("OK", "00", "Product updated");
+        } catch (OptimisticLockException | ObjectOptimisticLockingFailureException e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            productsResponse.setMetadata("ERROR", "-1", "Product modified by another request, try again");
+            return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.CONFLICT);
         } catch (Exception e) {
             e.getStackTrace();
             productsResponse.setMetadata("ERROR", "-1", "INTERNAL SERVER ERROR");
@@ -247,4 +569,262 @@ public class ProductServiceImpl implements IProductService {
         }
         return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.OK);
     }
+
+    /**
+     * Gets the decompressed picture of a Product, without loading the rest of its data.
+     * @param id The ID of the Product whose picture is to be found.
+     * @return The picture or empty if the Product does not exist or has no picture.
+     */
+    @Override
+    public Optional<DecodedPicture> findProductPicture(Long id) {
+        return productPictureService.findDecodedPicture(id);
+    }
+
+    /**
+     * Writes an EXCEL file with all the Products. The Products are read through a cursor and detached once written,
+     * so neither the query nor the persistence context grow with the number of Products.
+     * @param outputStream The stream where the EXCEL file is written.
+     * @throws IOException
+     */
+    @Override
+    @Transactional (readOnly = true)
+    public void exportProducts(OutputStream outputStream) throws IOException {
+        try (Stream<Product> products = productDao.streamAllWithCategory()) {
+            ProductExcelExporter excelExporter = new ProductExcelExporter(products.peek(entityManager::detach));
+            excelExporter.export(outputStream);
+        }
+    }
+
+    /**
+     * REST Request for getting the Products whose name starts with a prefix, for autocomplete.
+     * They are served from memory by ProductNameSuggester, without querying the DB.
+     * @param prefix The beginning of the names.
+     * @param limit Maximum number of suggestions, or null to use the default.
+     * @return OK with the ID and name of the Products found or ERROR if the suggestions are not available yet.
+     */
+    @Override
+    public ResponseEntity<ProductSuggestionResponseRest> suggestProducts(String prefix, Integer limit) {
+        ProductSuggestionResponseRest response = new ProductSuggestionResponseRest();
+
+        if (!productNameSuggester.isReady()) {
+            response.setMetadata("ERROR", "-1", "Suggestions not available yet");
+            return new ResponseEntity<ProductSuggestionResponseRest>(response, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+
+        int size = limit == null ? DEFAULT_SUGGESTIONS : Math.min(Math.max(limit, 1), MAX_SUGGESTIONS);
+        response.getProductSuggestionResponse().setSuggestionsList(productNameSuggester.suggest(prefix, size));
+        response.setMetadata("OK", "00", "Suggestions found");
+
+        return new ResponseEntity<ProductSuggestionResponseRest>(response, HttpStatus.OK);
+    }
+
+    /**
+     * Gets the ETag of the lists of Products with an aggregate query, without reading the Products.
+     * The Categories are part of it, as every Product is sent with its Category.
+     * @return The ETag, which changes whenever a Product or a Category is saved, updated or deleted.
+     */
+    @Override
+    public String findProductsETag() {
+        VersionAggregateProjection products = productDao.findVersionAggregate();
+        return EntityTags.ofProducts(products.getCount(), products.getVersionSum(), products.getMaxId(),
+                categoryCache.findAll());
+    }
+
+    /**
+     * REST Request for getting the Products inserted, updated or deleted after a token, for incremental
+     * synchronization. Every write takes a new modification sequence number, read here through the change_seq
+     * indexes, so only the changes are read. A Product changed several times is returned once, with its current data.
+     * @param since The nextToken of the previous response, or null to get every Product.
+     * @param limit Maximum number of changes, or null to use the default.
+     * @return OK with the changed Products, the deleted ones and the token of the next request,
+     * or ERROR if something unexpected happened.
+     */
+    @Override
+    @Transactional (readOnly = true)
+    public ResponseEntity<ProductChangesResponseRest> findProductChanges(Long since, Integer limit) {
+        ProductChangesResponseRest response = new ProductChangesResponseRest();
+
+        int size = limit == null ? DEFAULT_CHANGES : Math.min(Math.max(limit, 1), MAX_CHANGES);
+        // Sequence numbers start at 1, so -1 returns everything.
+        long token = since == null ? -1L : since;
+
+        try {
+            PageRequest page = PageRequest.of(0, size + 1);
+            List<Product> changed = productDao.findWithCategoryByChangeSeqGreaterThanOrderByChangeSeqAsc(token, page);
+            List<ProductTombstone> deleted = productTombstoneDao.findByChangeSeqGreaterThanOrderByChangeSeqAsc(token, page);
+
+            // Both lists are in sequence order: the first changes of the two are taken, up to the limit.
+            List<Product> productsList = new ArrayList<>();
+            List<ProductTombstone> deletedList = new ArrayList<>();
+            int nextChanged = 0;
+            int nextDeleted = 0;
+            long nextToken = token;
+
+            while (productsList.size() + deletedList.size() < size
+                    && (nextChanged < changed.size() || nextDeleted < deleted.size())) {
+                if (nextDeleted == deleted.size() || (nextChanged < changed.size()
+                        && changed.get(nextChanged).getChangeSeq() < deleted.get(nextDeleted).getChangeSeq())) {
+                    nextToken = changed.get(nextChanged).getChangeSeq();
+                    productsList.add(changed.get(nextChanged++));
+                } else {
+                    nextToken = deleted.get(nextDeleted).getChangeSeq();
+                    deletedList.add(deleted.get(nextDeleted++));
+                }
+            }
+
+            response.getProductChangesResponse().setProductsList(productsList);
+            response.getProductChangesResponse().setDeletedList(deletedList);
+            response.getProductChangesResponse().setNextToken(nextToken);
+            response.getProductChangesResponse().setHasMore(nextChanged < changed.size() || nextDeleted < deleted.size());
+            response.setMetadata("OK", "00", "Changes found");
+        } catch (Exception e) {
+            e.getStackTrace();
+            response.setMetadata("ERROR", "-1", "INTERNAL SERVER ERROR");
+            return new ResponseEntity<ProductChangesResponseRest>(response, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        return new ResponseEntity<ProductChangesResponseRest>(response, HttpStatus.OK);
+    }
+
+    /**
+     * REST Request for recording a quantity update of a Product, such as a scanned item. It is written to the DB a
+     * moment later, together with the other updates recorded meanwhile, but it is durable once acknowledged and
+     * findProductById sees it right away.
+     * @param id The ID of the Product.
+     * @param delta The units to be added, negative to take them.
+     * @return OK once the update is recorded.
+     */
+    @Override
+    public ResponseEntity<ProductResponseRest> recordQuantityUpdate(Long id, int delta) {
+        ProductResponseRest productsResponse = new ProductResponseRest();
+
+        if (delta == 0 || Math.abs(delta) > MAX_QUANTITY_DELTA) {
+            productsResponse.setMetadata("ERROR", "-1", "The delta must be between -" + MAX_QUANTITY_DELTA + " and "
+                    + MAX_QUANTITY_DELTA + ", and not 0");
+            return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.BAD_REQUEST);
+        }
+
+        try {
+            quantityWriteBehind.record(id, delta);
+            productsResponse.setMetadata("OK", "00", "Quantity update recorded");
+        } catch (Exception e) {
+            e.getStackTrace();
+            productsResponse.setMetadata("ERROR", "-1", "Quantity update not recorded");
+            return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        return new ResponseEntity<ProductResponseRest>(productsResponse, HttpStatus.OK);
+    }
+
+    /**
+     * REST Request for changing the prices of all the Products of a Category by a percentage or an amount, with a
+     * minimum price of 0. The Products are changed in the background with set-based UPDATEs, without loading them.
+     * @param categoryId The ID of the Category.
+     * @param percent Percentage to be added to the prices (negative to lower them), or null.
+     * @param amount Amount to be added to the prices (negative to lower them), or null.
+     * @param dryRun True to only count the Products that would be changed.
+     * @return The adjustment started, whose progress is found with its jobId, or the count of a dry run.
+     */
+    @Override
+    public ResponseEntity<PriceAdjustmentResponseRest> adjustCategoryPrices(Long categoryId, BigDecimal percent,
+                                                                            Integer amount, boolean dryRun) {
+        PriceAdjustmentResponseRest response = new PriceAdjustmentResponseRest();
+
+        if ((percent == null) == (amount == null) || (amount != null && amount == 0) || (percent != null
+                && (percent.compareTo(MIN_PRICE_PERCENT) <= 0 || percent.compareTo(MAX_PRICE_PERCENT) > 0))) {
+            response.setMetadata("ERROR", "-1", "Either a percent above " + MIN_PRICE_PERCENT + " and up to "
+                    + MAX_PRICE_PERCENT + " or a non-zero amount must be given");
+            return new ResponseEntity<PriceAdjustmentResponseRest>(response, HttpStatus.BAD_REQUEST);
+        }
+
+        try {
+            if (categoryCache.findById(categoryId).isEmpty()) {
+                response.setMetadata("ERROR", "-1", "Product Category not found");
+                return new ResponseEntity<PriceAdjustmentResponseRest>(response, HttpStatus.NOT_FOUND);
+            }
+
+            if (dryRun) {
+                PriceAdjustmentResponse dryRunResponse = response.getPriceAdjustmentResponse();
+                dryRunResponse.setCategoryId(categoryId);
+                dryRunResponse.setPercent(percent);
+                dryRunResponse.setAmount(amount);
+                dryRunResponse.setDryRun(true);
+                dryRunResponse.setTotal(priceAdjustmentJobs.countAffected(categoryId));
+                response.setMetadata("OK", "00", "Products to be adjusted: " + dryRunResponse.getTotal());
+                return new ResponseEntity<PriceAdjustmentResponseRest>(response, HttpStatus.OK);
+            }
+
+            Optional<PriceAdjustmentResponse> job = priceAdjustmentJobs.start(categoryId, percent, amount);
+
+            if (job.isEmpty()) {
+                response.setMetadata("ERROR", "-1", "The prices of the Category are already being adjusted");
+                return new ResponseEntity<PriceAdjustmentResponseRest>(response, HttpStatus.CONFLICT);
+            }
+            response.setPriceAdjustmentResponse(job.get());
+            response.setMetadata("OK", "00", "Price adjustment started");
+        } catch (Exception e) {
+            e.getStackTrace();
+            response.setMetadata("ERROR", "-1", "INTERNAL SERVER ERROR");
+            return new ResponseEntity<PriceAdjustmentResponseRest>(response, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        return new ResponseEntity<PriceAdjustmentResponseRest>(response, HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * REST Request for getting the progress of a price adjustment.
+     * @param jobId The jobId returned when the adjustment was started.
+     * @return The state of the adjustment.
+     */
+    @Override
+    public ResponseEntity<PriceAdjustmentResponseRest> findPriceAdjustment(String jobId) {
+        PriceAdjustmentResponseRest response = new PriceAdjustmentResponseRest();
+        Optional<PriceAdjustmentResponse> job = priceAdjustmentJobs.find(jobId);
+
+        if (job.isEmpty()) {
+            response.setMetadata("ERROR", "-1", "Price adjustment not found");
+            return new ResponseEntity<PriceAdjustmentResponseRest>(response, HttpStatus.NOT_FOUND);
+        }
+        response.setPriceAdjustmentResponse(job.get());
+        response.setMetadata("OK", "00", "Price adjustment found");
+        return new ResponseEntity<PriceAdjustmentResponseRest>(response, HttpStatus.OK);
+    }
+
+    // Shares the read with the identical ones in flight. It runs in its own read-only transaction, so the result does
+    // not depend on the transaction of the caller; callers inside a transaction read on their own, as they must see
+    // their own changes.
+    private <K> ResponseEntity<ProductResponseRest> coalesce(
+            SingleFlight<K, ResponseEntity<ProductResponseRest>> reads, K key,
+            Supplier<ResponseEntity<ProductResponseRest>> read) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return read.get();
+        }
+        return reads.execute(key, () -> readOnlyTransaction.execute((status) -> read.get()));
+    }
+
+    private void addPendingQuantity(ResponseEntity<ProductResponseRest> response,
+                                    QuantityWriteBehind.PendingQuantity pendingQuantity) {
+        List<Product> productsList = response.getBody().getProductResponse().getProductsList();
+        if (productsList == null) {
+            return;
+        }
+
+        for (Product product : productsList) {
+            product.setQuantity(product.getQuantity() + pendingQuantity.delta());
+            if (product.getUpdatedAt() == null || product.getUpdatedAt().isBefore(pendingQuantity.recordedAt())) {
+                product.setUpdatedAt(pendingQuantity.recordedAt());
+            }
+        }
+    }
+
+    // Embeds the decompressed pictures in the Products, decoding them in parallel but keeping the order of the list.
+    private void inlinePictures(List<Product> products) {
+        Map<Long, DecodedPicture> pictures = productPictureService.findDecodedPictures(
+                products.stream().map(Product::getId).toList());
+
+        products.forEach((p) -> {
+            DecodedPicture picture = pictures.get(p.getId());
+            p.setPicture(picture == null ? null : picture.data());
+        });
+    }
+
+    private record NameSearch(String name, boolean inlinePictures) {
+    }
 }
@@ -0,0 +1,105 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.withnacho.bikestore.demo.dao.ProductStockDao;
+import com.withnacho.bikestore.demo.entity.Product;
+import com.withnacho.bikestore.demo.event.ProductChangedEvent;
+import com.withnacho.bikestore.demo.event.ProductSnapshot;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Applies and publishes the changes of Product.quantity written in SQL through ProductStockDao, which bypass the
+ * entities: it publishes their change events and drops the Products from the second-level cache.
+ */
+@Component
+public class ProductStockChanges {
+
+    private ProductStockDao productStockDao;
+    private ProductChangeSequence productChangeSequence;
+    private ApplicationEventPublisher eventPublisher;
+    private EntityManagerFactory entityManagerFactory;
+
+    public ProductStockChanges(ProductStockDao productStockDao, ProductChangeSequence productChangeSequence,
+                               ApplicationEventPublisher eventPublisher, EntityManagerFactory entityManagerFactory) {
+        super();
+        this.productStockDao = productStockDao;
+        this.productChangeSequence = productChangeSequence;
+        this.eventPublisher = eventPublisher;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    /**
+     * Adds units to (or takes units from) several Products, unconditionally, in the current transaction.
+     * The rows are updated in ID order, so concurrent adjustments of the same Products cannot deadlock.
+     * @param deltas The units to be added to each Product, negative to take them.
+     * @return The IDs of the Products adjusted, the others do not exist.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<Long> adjust(Map<Long, Integer> deltas) {
+        if (deltas.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, Integer> applied = new TreeMap<>();
+        Instant now = Instant.now();
+        long changeSeq = productChangeSequence.next(deltas.size());
+        for (Map.Entry<Long, Integer> delta : new TreeMap<>(deltas).entrySet()) {
+            if (productStockDao.adjust(delta.getKey(), delta.getValue(), changeSeq++, now)) {
+                applied.put(delta.getKey(), delta.getValue());
+            }
+        }
+
+        published(applied);
+        return new ArrayList<>(applied.keySet());
+    }
+
+    /**
+     * Publishes the quantities already changed in the current transaction.
+     * @param deltas The units added to each Product, negative if they were taken.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void published(Map<Long, Integer> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        for (ProductSnapshot after : productStockDao.findSnapshots(deltas.keySet())) {
+            ProductSnapshot before = new ProductSnapshot(after.id(), after.name(), after.price(),
+                    after.quantity() - deltas.get(after.id()), after.categoryId());
+            eventPublisher.publishEvent(ProductChangedEvent.updated(before, after));
+        }
+        evict(deltas.keySet());
+    }
+
+    /**
+     * Drops Products changed in SQL from the second-level cache, now and again when the current transaction
+     * completes, so a read between both does not cache the old data.
+     * @param productIds The IDs of the Products.
+     */
+    public void evict(Collection<Long> productIds) {
+        Runnable eviction = () -> productIds.forEach((id) -> entityManagerFactory.getCache().evict(Product.class, id));
+        eviction.run();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    eviction.run();
+                }
+            });
+        }
+    }
+
+}
@@ -0,0 +1,403 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import com.withnacho.bikestore.demo.entity.ChangeCounter;
+import com.withnacho.bikestore.demo.util.QuantityJournal;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This class buffers the quantity updates sent per scanned item, so they do not cost a transaction each.
+ * An update is acknowledged once it is forced to the local journal, and only then added to the deltas pending per
+ * Product; the updates arriving while the journal is being forced are written and forced together. The pending
+ * deltas are applied to the DB every bikestore.quantity.flush-interval-ms, or as soon as flush-threshold Products
+ * have one, in a single transaction that also stores the last journal sequence number applied (the checkpoint), in
+ * the change_counter row named after the ID of the journal.
+ * On startup, the journaled updates after the checkpoint are pending again, so a crash loses none of them and
+ * none of them is applied twice.
+ */
+@Component
+public class QuantityWriteBehind implements SmartLifecycle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QuantityWriteBehind.class);
+
+    public static final String CHECKPOINT_PREFIX = "quantity-journal-";
+
+    /**
+     * Quantity delta of a Product not yet in the DB.
+     * @param delta The units to be added, negative if they are taken.
+     * @param recordedAt When the last update of the delta was received.
+     */
+    public record PendingQuantity(int delta, Instant recordedAt) {
+
+        private PendingQuantity plus(PendingQuantity other) {
+            return new PendingQuantity(delta + other.delta,
+                    recordedAt.isAfter(other.recordedAt) ? recordedAt : other.recordedAt);
+        }
+
+    }
+
+    private final ProductStockChanges productStockChanges;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final Path journalDirectory;
+    private final long segmentBytes;
+    private final long flushIntervalMillis;
+    private final int flushThreshold;
+
+    private final Queue<QuantityUpdate> received = new ConcurrentLinkedQueue<>();
+    // Held for writing from the commit of a flush until its deltas leave inFlight, so a read never sees both or none.
+    private final StampedLock flushLock = new StampedLock();
+    // Guarded by this.
+    private Map<Long, PendingQuantity> pending = new HashMap<>();
+    private Map<Long, PendingQuantity> inFlight = Map.of();
+    private long journaledSeq;
+
+    private QuantityJournal journal;
+    private String checkpointName;
+    private Thread journalWriter;
+    private ScheduledExecutorService flusher;
+    private volatile boolean running;
+
+    public QuantityWriteBehind(ProductStockChanges productStockChanges, TransactionTemplate transactionTemplate,
+                               EntityManager entityManager,
+                               @Value("${bikestore.quantity.journal-dir:data/quantity-journal}") String journalDirectory,
+                               @Value("${bikestore.quantity.journal-segment-bytes:8388608}") long segmentBytes,
+                               @Value("${bikestore.quantity.flush-interval-ms:200}") long flushIntervalMillis,
+                               @Value("${bikestore.quantity.flush-threshold:1000}") int flushThreshold) {
+        this.productStockChanges = productStockChanges;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManager = entityManager;
+        this.journalDirectory = Path.of(journalDirectory);
+        this.segmentBytes = segmentBytes;
+        this.flushIntervalMillis = Math.max(flushIntervalMillis, 1);
+        this.flushThreshold = Math.max(flushThreshold, 1);
+    }
+
+    /**
+     * Records a quantity update. It returns once the update is durable, but before it is in the DB.
+     * @param productId The ID of the Product. Updates of Products that do not exist are dropped when flushed.
+     * @param delta The units to be added, negative to take them.
+     */
+    public void record(Long productId, int delta) {
+        if (!running) {
+            throw new IllegalStateException("Quantity updates are not being accepted");
+        }
+
+        QuantityUpdate update = new QuantityUpdate(productId, delta);
+        received.add(update);
+        LockSupport.unpark(journalWriter);
+
+        try {
+            update.durable.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Reads from the DB and adds the pending delta of a Product to the result. The read is repeated if a flush
+     * commits meanwhile, so the delta is neither missed nor counted twice.
+     * @param productId The ID of the Product.
+     * @param read The read, in its own transaction.
+     * @param addPending Adds the pending delta to the result of the read; only called if there is one.
+     * @return The result of the read.
+     */
+    public <T> T read(Long productId, Supplier<T> read, BiConsumer<T, PendingQuantity> addPending) {
+        long stamp = flushLock.tryOptimisticRead();
+        if (stamp != 0) {
+            T result = read.get();
+            PendingQuantity pendingQuantity = pendingQuantity(productId);
+            if (flushLock.validate(stamp)) {
+                return withPending(result, pendingQuantity, addPending);
+            }
+        }
+
+        stamp = flushLock.readLock();
+        try {
+            return withPending(read.get(), pendingQuantity(productId), addPending);
+        } finally {
+            flushLock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void start() {
+        List<QuantityJournal.Entry> recovered;
+        try {
+            journal = new QuantityJournal(journalDirectory, segmentBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            checkpointName = CHECKPOINT_PREFIX + journal.getId();
+            long checkpoint = transactionTemplate.execute((status) -> checkpoint().getLastSeq());
+            journaledSeq = checkpoint;
+            recovered = journal.recover(checkpoint);
+        } catch (IOException | RuntimeException e) {
+            try {
+                journal.close();
+            } catch (IOException closing) {
+                e.addSuppressed(closing);
+            }
+            throw e instanceof IOException ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+        }
+
+        Instant now = Instant.now();
+        for (QuantityJournal.Entry entry : recovered) {
+            pending.merge(entry.productId(), new PendingQuantity(entry.delta(), now), PendingQuantity::plus);
+            journaledSeq = entry.seq();
+        }
+        if (!recovered.isEmpty()) {
+            LOGGER.info("Recovered {} quantity updates from the journal", recovered.size());
+        }
+
+        running = true;
+        journalWriter = new Thread(this::writeJournal, "quantity-journal");
+        journalWriter.setDaemon(true);
+        journalWriter.start();
+        flusher = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "quantity-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, 0, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        LockSupport.unpark(journalWriter);
+        try {
+            journalWriter.join(TimeUnit.SECONDS.toMillis(5));
+            received.forEach((update) -> update.durable.completeExceptionally(
+                    new IllegalStateException("Quantity updates are not being accepted")));
+            flusher.shutdown();
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // What cannot be flushed now stays in the journal for the next start.
+        flush();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close the quantity journal", e);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Started before the web server, and stopped after it.
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    private void writeJournal() {
+        while (running || !received.isEmpty()) {
+            if (received.isEmpty()) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            List<QuantityUpdate> updates = new ArrayList<>();
+            QuantityUpdate update;
+            while ((update = received.poll()) != null) {
+                updates.add(update);
+            }
+
+            long[] productIds = new long[updates.size()];
+            int[] deltas = new int[updates.size()];
+            for (int i = 0; i < updates.size(); i++) {
+                productIds[i] = updates.get(i).productId;
+                deltas[i] = updates.get(i).delta;
+            }
+
+            long lastSeq;
+            try {
+                lastSeq = journal.append(productIds, deltas);
+            } catch (IOException e) {
+                UncheckedIOException failure = new UncheckedIOException("Quantity update not journaled", e);
+                updates.forEach((failed) -> failed.durable.completeExceptionally(failure));
+                continue;
+            }
+
+            int pendingProducts;
+            Instant now = Instant.now();
+            synchronized (this) {
+                for (QuantityUpdate journaled : updates) {
+                    pending.merge(journaled.productId, new PendingQuantity(journaled.delta, now), PendingQuantity::plus);
+                }
+                journaledSeq = lastSeq;
+                pendingProducts = pending.size();
+            }
+            updates.forEach((journaled) -> journaled.durable.complete(null));
+
+            if (pendingProducts >= flushThreshold) {
+                try {
+                    flusher.execute(this::flush);
+                } catch (RejectedExecutionException e) {
+                    // Stopping: the last flush takes them.
+                }
+            }
+        }
+    }
+
+    // Applies the pending deltas in one transaction. They are pending again if it fails, to be retried.
+    private void flush() {
+        Map<Long, PendingQuantity> batch;
+        long upTo;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            upTo = journaledSeq;
+            pending = new HashMap<>();
+            inFlight = batch;
+        }
+
+        Map<Long, Integer> deltas = new HashMap<>();
+        batch.forEach((productId, pendingQuantity) -> {
+            if (pendingQuantity.delta() != 0) {
+                deltas.put(productId, pendingQuantity.delta());
+            }
+        });
+
+        try {
+            transactionTemplate.executeWithoutResult((status) -> {
+                List<Long> applied = productStockChanges.adjust(deltas);
+                if (applied.size() < deltas.size()) {
+                    LOGGER.warn("Dropped the quantity updates of {} products that do not exist",
+                            deltas.size() - applied.size());
+                }
+                checkpoint().setLastSeq(upTo);
+                // Registered last, so the Products are evicted from the cache before the reads are let in again.
+                TransactionSynchronizationManager.registerSynchronization(new FlushCompletion(batch));
+            });
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not flush the quantity updates, they will be retried", e);
+            restore(batch);
+            return;
+        }
+
+        journal.checkpoint(upTo);
+    }
+
+    // Makes the batch pending again, unless the transaction did already.
+    private synchronized void restore(Map<Long, PendingQuantity> batch) {
+        if (inFlight == batch) {
+            batch.forEach((productId, pendingQuantity) -> pending.merge(productId, pendingQuantity, PendingQuantity::plus));
+            inFlight = Map.of();
+        }
+    }
+
+    // The checkpoint row, locked until the end of the transaction and created the first time.
+    private ChangeCounter checkpoint() {
+        ChangeCounter checkpoint = entityManager.find(ChangeCounter.class, checkpointName, LockModeType.PESSIMISTIC_WRITE);
+        if (checkpoint == null) {
+            checkpoint = new ChangeCounter();
+            checkpoint.setName(checkpointName);
+            entityManager.persist(checkpoint);
+        }
+        return checkpoint;
+    }
+
+    private synchronized PendingQuantity pendingQuantity(Long productId) {
+        PendingQuantity pendingQuantity = pending.get(productId);
+        PendingQuantity flushing = inFlight.get(productId);
+        if (pendingQuantity == null || flushing == null) {
+            return pendingQuantity == null ? flushing : pendingQuantity;
+        }
+        return pendingQuantity.plus(flushing);
+    }
+
+    private static <T> T withPending(T result, PendingQuantity pendingQuantity, BiConsumer<T, PendingQuantity> addPending) {
+        if (pendingQuantity != null && pendingQuantity.delta() != 0) {
+            addPending.accept(result, pendingQuantity);
+        }
+        return result;
+    }
+
+    // Holds the flush lock from right before the commit of a flush until its batch has left inFlight, so the reads
+    // wait only for the commit and not for the whole transaction.
+    private final class FlushCompletion implements TransactionSynchronization {
+
+        private final Map<Long, PendingQuantity> batch;
+        private long stamp;
+
+        private FlushCompletion(Map<Long, PendingQuantity> batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            stamp = flushLock.writeLock();
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            try {
+                if (status == STATUS_COMMITTED) {
+                    synchronized (QuantityWriteBehind.this) {
+                        inFlight = Map.of();
+                    }
+                } else {
+                    restore(batch);
+                }
+            } finally {
+                if (stamp != 0) {
+                    flushLock.unlockWrite(stamp);
+                }
+            }
+        }
+
+    }
+
+    private static final class QuantityUpdate {
+
+        private final long productId;
+        private final int delta;
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        private QuantityUpdate(long productId, int delta) {
+            this.productId = productId;
+            this.delta = delta;
+        }
+
+    }
+
+}
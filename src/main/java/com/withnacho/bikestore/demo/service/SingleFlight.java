@@ -0,0 +1,71 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Coalesces identical concurrent reads: while a read for a key is running, other calls for the same key wait for it
+ * and get its result instead of running it again. Nothing is kept once the read finishes, so it is not a cache and
+ * results are never stale by more than the duration of one read.
+ * The number of reads executed and shared is exposed in /actuator/metrics as bikestore.coalescing.calls.
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter executed;
+    private final Counter shared;
+
+    /**
+     * @param name The name of the coalesced read, used as the "name" tag of its metrics.
+     * @param meterRegistry The registry of the metrics.
+     */
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.executed = Counter.builder("bikestore.coalescing.calls").tag("name", name).tag("outcome", "executed")
+                .description("Reads executed").register(meterRegistry);
+        this.shared = Counter.builder("bikestore.coalescing.calls").tag("name", name).tag("outcome", "shared")
+                .description("Reads that received the result of an identical read in flight").register(meterRegistry);
+        Gauge.builder("bikestore.coalescing.in.flight", inFlight, Map::size).tag("name", name)
+                .description("Reads in flight").register(meterRegistry);
+    }
+
+    /**
+     * Runs the read of a key, or waits for the one already running for the same key.
+     * The waiting threads do not hold any lock, so they do not pin the carrier thread when running on virtual threads.
+     * @param key The key identifying the read.
+     * @param read The read, run by the first caller only.
+     * @return The result of the read. If it failed, all the callers get its exception.
+     */
+    public V execute(K key, Supplier<V> read) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+
+        if (running != null) {
+            shared.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        executed.increment();
+        try {
+            V result = read.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+}
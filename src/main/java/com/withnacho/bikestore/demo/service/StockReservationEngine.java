@@ -0,0 +1,292 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+import com.withnacho.bikestore.demo.dao.ProductStockDao;
+import com.withnacho.bikestore.demo.entity.ReservationStatus;
+import com.withnacho.bikestore.demo.entity.StockReservation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This class changes Product.quantity atomically in the DB, with conditional UPDATEs that never let it go below 0,
+ * so concurrent checkouts can neither oversell nor lose updates, whatever the number of application instances.
+ * Reservations are not written one by one: they are queued without locking and a single thread applies, every
+ * bikestore.stock.batch-window-ms, all the queued reservations of a Product with one UPDATE, in one transaction for
+ * the whole batch. A hot Product then costs one UPDATE per window instead of one per checkout. When the Product has
+ * not enough units for all of them, its row is locked and the reservations are accepted in arrival order while
+ * units remain.
+ * A caller waits at most bikestore.stock.reserve-timeout-ms for its batch; a reservation committed after its caller
+ * gave up is not lost, it is released when it expires.
+ */
+@Component
+public class StockReservationEngine implements SmartLifecycle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StockReservationEngine.class);
+
+    /**
+     * Result of a reservation.
+     */
+    public enum Outcome {
+        RESERVED,
+        INSUFFICIENT_STOCK,
+        PRODUCT_NOT_FOUND
+    }
+
+    /**
+     * @param outcome Whether the units were reserved.
+     * @param reservation The reservation created, or null if the units were not reserved.
+     */
+    public record Result(Outcome outcome, StockReservation reservation) {
+    }
+
+    private final ProductStockDao productStockDao;
+    private final ProductChangeSequence productChangeSequence;
+    private final TransactionTemplate transactionTemplate;
+    private final ProductStockChanges productStockChanges;
+    private final long batchWindowNanos;
+    private final int maxBatch;
+    private final long timeoutMillis;
+    private final Queue<PendingReservation> pending = new ConcurrentLinkedQueue<>();
+    // Null when batching is disabled: each reservation is then applied by its own caller.
+    private Thread flusher;
+    private volatile boolean running;
+
+    public StockReservationEngine(ProductStockDao productStockDao, ProductChangeSequence productChangeSequence,
+                                  TransactionTemplate transactionTemplate, ProductStockChanges productStockChanges,
+                                  @Value("${bikestore.stock.batch-window-ms:2}") long batchWindowMillis,
+                                  @Value("${bikestore.stock.max-batch:1000}") int maxBatch,
+                                  @Value("${bikestore.stock.reserve-timeout-ms:5000}") long timeoutMillis) {
+        this.productStockDao = productStockDao;
+        this.productChangeSequence = productChangeSequence;
+        this.transactionTemplate = transactionTemplate;
+        this.productStockChanges = productStockChanges;
+        this.batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(batchWindowMillis);
+        this.maxBatch = Math.max(maxBatch, 1);
+        this.timeoutMillis = Math.max(timeoutMillis, 1);
+    }
+
+    /**
+     * Reserves units of a Product, taking them from its quantity.
+     * @param productId The ID of the Product.
+     * @param quantity The number of units, at least 1.
+     * @param ttl How long the units are held if the reservation is neither committed nor released.
+     * @return The outcome and the reservation created.
+     * @throws IllegalStateException If the engine is stopped, or the batch was not applied in time.
+     */
+    public Result reserve(Long productId, int quantity, Duration ttl) {
+        if (!running) {
+            throw new IllegalStateException("Stock reservations are not being accepted");
+        }
+        PendingReservation request = new PendingReservation(productId, quantity, ttl);
+
+        if (batchWindowNanos == 0) {
+            flush(List.of(request));
+        } else {
+            pending.add(request);
+            // Stopped meanwhile: the request is only taken back if the last batches did not take it.
+            if (!running && pending.remove(request)) {
+                throw new IllegalStateException("Stock reservations are not being accepted");
+            }
+            LockSupport.unpark(flusher);
+        }
+
+        try {
+            return request.completion.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw new IllegalStateException("Stock reservation not applied in " + timeoutMillis + " ms", e.getCause());
+            }
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Gives units back to a Product, in the current transaction.
+     * @param productId The ID of the Product.
+     * @param quantity The number of units.
+     * @return False if the Product does not exist anymore.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean giveBack(Long productId, int quantity) {
+        return !productStockChanges.adjust(Map.of(productId, quantity)).isEmpty();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (batchWindowNanos > 0) {
+            flusher = new Thread(this::flushLoop, "stock-reservations");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+            try {
+                flusher.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Left if the last batches could not be applied in time.
+        IllegalStateException stopped = new IllegalStateException("Stock reservations are not being accepted");
+        PendingReservation request;
+        while ((request = pending.poll()) != null) {
+            request.completion.completeExceptionally(stopped);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Started before the web server, and stopped after it.
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    private void flushLoop() {
+        while (running || !pending.isEmpty()) {
+            if (pending.isEmpty()) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            // Lets the reservations arriving meanwhile join the batch. A sleep, unlike a park, is not cut short
+            // by the callers waking the thread up.
+            try {
+                TimeUnit.NANOSECONDS.sleep(batchWindowNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            List<PendingReservation> batch = new ArrayList<>();
+            try {
+                PendingReservation request;
+                while (batch.size() < maxBatch && (request = pending.poll()) != null) {
+                    batch.add(request);
+                }
+                flush(batch);
+            } catch (Throwable e) {
+                // The thread must survive anything, or every later caller would wait until its timeout.
+                LOGGER.error("Could not apply a batch of {} stock reservations", batch.size(), e);
+                batch.forEach((failed) -> failed.completion.completeExceptionally(e));
+            }
+        }
+    }
+
+    private void flush(List<PendingReservation> batch) {
+        // In ID order, like every other stock change, so they cannot deadlock with each other.
+        Map<Long, List<PendingReservation>> byProduct = new TreeMap<>();
+        batch.forEach((request) -> byProduct.computeIfAbsent(request.productId, (id) -> new ArrayList<>()).add(request));
+
+        try {
+            transactionTemplate.executeWithoutResult((status) -> apply(byProduct));
+        } catch (RuntimeException e) {
+            batch.forEach((request) -> request.completion.completeExceptionally(e));
+            return;
+        }
+        batch.forEach((request) -> request.completion.complete(request.result));
+    }
+
+    private void apply(Map<Long, List<PendingReservation>> byProduct) {
+        Instant now = Instant.now();
+        long changeSeq = productChangeSequence.next(byProduct.size());
+        List<StockReservation> reservations = new ArrayList<>();
+        Map<Long, Integer> deltas = new LinkedHashMap<>();
+
+        for (Map.Entry<Long, List<PendingReservation>> product : byProduct.entrySet()) {
+            Long productId = product.getKey();
+            List<PendingReservation> requests = product.getValue();
+            int total = requests.stream().mapToInt((request) -> request.quantity).sum();
+
+            if (productStockDao.decrementIfAvailable(productId, total, changeSeq, now)) {
+                requests.forEach((request) -> reservations.add(request.accept(now)));
+                deltas.put(productId, -total);
+            } else {
+                Integer available = productStockDao.lockQuantity(productId);
+                int takenHere = 0;
+
+                for (PendingReservation request : requests) {
+                    if (available == null) {
+                        request.result = new Result(Outcome.PRODUCT_NOT_FOUND, null);
+                    } else if (request.quantity <= available - takenHere) {
+                        reservations.add(request.accept(now));
+                        takenHere += request.quantity;
+                    } else {
+                        request.result = new Result(Outcome.INSUFFICIENT_STOCK, null);
+                    }
+                }
+
+                if (takenHere > 0) {
+                    productStockDao.adjust(productId, -takenHere, changeSeq, now);
+                    deltas.put(productId, -takenHere);
+                }
+            }
+            changeSeq++;
+        }
+
+        if (!reservations.isEmpty()) {
+            productStockDao.insertReservations(reservations);
+        }
+        productStockChanges.published(deltas);
+    }
+
+    private static final class PendingReservation {
+
+        private final Long productId;
+        private final int quantity;
+        private final Duration ttl;
+        private final CompletableFuture<Result> completion = new CompletableFuture<>();
+        // Set inside the transaction, and only handed to the caller once it commits.
+        private Result result;
+
+        private PendingReservation(Long productId, int quantity, Duration ttl) {
+            this.productId = productId;
+            this.quantity = quantity;
+            this.ttl = ttl;
+        }
+
+        private StockReservation accept(Instant now) {
+            StockReservation reservation = new StockReservation();
+            reservation.setId(UUID.randomUUID().toString());
+            reservation.setProductId(productId);
+            reservation.setQuantity(quantity);
+            reservation.setStatus(ReservationStatus.RESERVED);
+            reservation.setCreatedAt(now);
+            reservation.setExpiresAt(now.plus(ttl));
+            result = new Result(Outcome.RESERVED, reservation);
+            return reservation;
+        }
+
+    }
+
+}
@@ -0,0 +1,215 @@
+package com.withnacho.bikestore.demo.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.withnacho.bikestore.demo.dao.IStockReservationDao;
+import com.withnacho.bikestore.demo.entity.ReservationStatus;
+import com.withnacho.bikestore.demo.entity.StockReservation;
+import com.withnacho.bikestore.demo.response.StockReservationResponseRest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Service
+public class StockReservationServiceImpl implements IStockReservationService, SmartLifecycle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StockReservationServiceImpl.class);
+
+    private static final long MAX_TTL_SECONDS = TimeUnit.DAYS.toSeconds(1);
+    private static final int EXPIRED_PAGE = 100;
+
+    private IStockReservationDao stockReservationDao;
+    private StockReservationEngine stockReservationEngine;
+    private TransactionTemplate transactionTemplate;
+    private final long defaultTtlSeconds;
+    private final long expiryCheckSeconds;
+    private volatile ScheduledExecutorService expiryChecks;
+
+    public StockReservationServiceImpl(IStockReservationDao stockReservationDao,
+                                       StockReservationEngine stockReservationEngine,
+                                       TransactionTemplate transactionTemplate,
+                                       @Value("${bikestore.stock.reservation-ttl-seconds:900}") long defaultTtlSeconds,
+                                       @Value("${bikestore.stock.expiry-check-seconds:60}") long expiryCheckSeconds) {
+        super();
+        this.stockReservationDao = stockReservationDao;
+        this.stockReservationEngine = stockReservationEngine;
+        this.transactionTemplate = transactionTemplate;
+        this.defaultTtlSeconds = defaultTtlSeconds;
+        this.expiryCheckSeconds = expiryCheckSeconds;
+    }
+
+    /**
+     * Reserves units of a Product for a checkout. Concurrent reservations of the same Product never take more units
+     * than it has.
+     * @param productId The ID of the Product.
+     * @param quantity The number of units to be reserved.
+     * @param ttlSeconds Seconds the units are held before being given back, or null for the default.
+     * @return The reservation, to be committed or released.
+     */
+    @Override
+    public ResponseEntity<StockReservationResponseRest> reserve(Long productId, int quantity, Long ttlSeconds) {
+        StockReservationResponseRest response = new StockReservationResponseRest();
+
+        long ttl = ttlSeconds == null ? defaultTtlSeconds : ttlSeconds;
+        if (quantity < 1 || ttl < 1 || ttl > MAX_TTL_SECONDS) {
+            response.setMetadata("ERROR", "-1", "The quantity must be positive and the TTL between 1 and "
+                    + MAX_TTL_SECONDS + " seconds");
+            return new ResponseEntity<StockReservationResponseRest>(response, HttpStatus.BAD_REQUEST);
+        }
+
+        try {
+            StockReservationEngine.Result result =
+                    stockReservationEngine.reserve(productId, quantity, Duration.ofSeconds(ttl));
+
+            switch (result.outcome()) {
+                case RESERVED -> {
+                    response.getStockReservationResponse().setReservationsList(List.of(result.reservation()));
+                    response.setMetadata("OK", "00", "Stock reserved");
+                }
+                case INSUFFICIENT_STOCK -> {
+                    response.setMetadata("ERROR", "-1", "Not enough stock");
+                    return new ResponseEntity<StockReservationResponseRest>(response, HttpStatus.CONFLICT);
+                }
+                default -> {
+                    response.setMetadata("ERROR", "-1", "Product not found");
+                    return new ResponseEntity<StockReservationResponseRest>(response, HttpStatus.NOT_FOUND);
+                }
+            }
+        } catch (IllegalStateException e) {
+            response.setMetadata("ERROR", "-1", "Stock reservations are not available, try again");
+            return new ResponseEntity<StockReservationResponseRest>(response, HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (Exception e) {
+            e.getStackTrace();
+            response.setMetadata("ERROR", "-1", "Error reserving stock");
+            return new ResponseEntity<StockReservationResponseRest>(response, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        return new ResponseEntity<StockReservationResponseRest>(response, HttpStatus.OK);
+    }
+
+    /**
+     * Cancels a reservation, giving its units back to the Product.
+     * @param reservationId The ID of the reservation.
+     * @return The released reservation.
+     */
+    @Override
+    @Transactional
+    public ResponseEntity<StockReservationResponseRest> release(String reservationId) {
+        return finish(reservationId, ReservationStatus.RELEASED, "Reservation released");
+    }
+
+    /**
+     * Confirms a reservation: its units are kept out of the Product for good. A reservation past its expiry can still
+     * be committed until the expiry check gives its units back.
+     * @param reservationId The ID of the reservation.
+     * @return The committed reservation.
+     */
+    @Override
+    @Transactional
+    public ResponseEntity<StockReservationResponseRest> commit(String reservationId) {
+        return finish(reservationId, ReservationStatus.COMMITTED, "Reservation committed");
+    }
+
+    @Override
+    public void start() {
+        expiryChecks = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "stock-reservation-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        expiryChecks.scheduleWithFixedDelay(this::releaseExpired, expiryCheckSeconds, expiryCheckSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop() {
+        ScheduledExecutorService checks = expiryChecks;
+        expiryChecks = null;
+        if (checks != null) {
+            checks.shutdownNow();
+            try {
+                checks.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return expiryChecks != null;
+    }
+
+    // Started after StockReservationEngine, which gives the units back, and stopped before it.
+    @Override
+    public int getPhase() {
+        return 1;
+    }
+
+    private ResponseEntity<StockReservationResponseRest> finish(String reservationId, ReservationStatus status,
+                                                                String message) {
+        StockReservationResponseRest response = new StockReservationResponseRest();
+
+        try {
+            Optional<StockReservation> reservation = stockReservationDao.findById(reservationId);
+
+            if (reservation.isEmpty()) {
+                response.setMetadata("ERROR", "-1", "Reservation not found");
+                return new ResponseEntity<StockReservationResponseRest>(response, HttpStatus.NOT_FOUND);
+            }
+
+            // The status is changed conditionally, so a concurrent commit, release or expiry cannot both succeed.
+            if (stockReservationDao.finish(reservationId, status) == 0) {
+                response.setMetadata("ERROR", "-1", "Reservation already " + reservation.get().getStatus().name().toLowerCase());
+                return new ResponseEntity<StockReservationResponseRest>(response, HttpStatus.CONFLICT);
+            }
+
+            if (status == ReservationStatus.RELEASED) {
+                stockReservationEngine.giveBack(reservation.get().getProductId(), reservation.get().getQuantity());
+            }
+
+            reservation.get().setStatus(status);
+            response.getStockReservationResponse().setReservationsList(List.of(reservation.get()));
+            response.setMetadata("OK", "00", message);
+        } catch (Exception e) {
+            e.getStackTrace();
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            response.setMetadata("ERROR", "-1", "Error finishing the reservation");
+            return new ResponseEntity<StockReservationResponseRest>(response, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        return new ResponseEntity<StockReservationResponseRest>(response, HttpStatus.OK);
+    }
+
+    // Gives back the units of the reservations past their expiry, each one in its own transaction.
+    private void releaseExpired() {
+        try {
+            List<StockReservation> expired;
+            do {
+                expired = stockReservationDao.findExpired(Instant.now(), PageRequest.of(0, EXPIRED_PAGE));
+                for (StockReservation reservation : expired) {
+                    transactionTemplate.executeWithoutResult((status) -> {
+                        if (stockReservationDao.finish(reservation.getId(), ReservationStatus.EXPIRED) == 1) {
+                            stockReservationEngine.giveBack(reservation.getProductId(), reservation.getQuantity());
+                        }
+                    });
+                }
+            } while (expired.size() == EXPIRED_PAGE);
+        } catch (Exception e) {
+            LOGGER.warn("Could not release the expired stock reservations, they will be retried", e);
+        }
+    }
+
+}
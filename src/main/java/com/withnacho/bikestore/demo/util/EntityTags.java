@@ -0,0 +1,89 @@
+package com.withnacho.bikestore.demo.util;
+
+import java.time.Instant;
+import java.util.List;
+
+import com.withnacho.bikestore.demo.entity.Category;
+import com.withnacho.bikestore.demo.entity.Product;
+
+/**
+ * This class builds the validators of the responses: strong ETags from the version columns and Last-Modified
+ * timestamps from the updatedAt columns. A Product is sent with its Category, so its validators include both.
+ * The ETag of a Product also includes its quantity, which changes with the pending quantity updates before the
+ * version does.
+ */
+public class EntityTags {
+
+    private EntityTags() {
+    }
+
+    /**
+     * @param product The Product, with its Category loaded.
+     * @return The ETag of the Product.
+     */
+    public static String of(Product product) {
+        Category category = product.getCategory();
+        return "\"product-" + product.getId() + "-" + product.getVersion()
+                + (category == null ? "" : "-" + category.getVersion()) + "-" + product.getQuantity() + "\"";
+    }
+
+    /**
+     * @param category The Category.
+     * @return The ETag of the Category.
+     */
+    public static String of(Category category) {
+        return "\"category-" + category.getId() + "-" + category.getVersion() + "\"";
+    }
+
+    /**
+     * @param categories All the Categories.
+     * @return The ETag of the list of all the Categories.
+     */
+    public static String ofCategories(List<Category> categories) {
+        return "\"categories-" + categoriesVersion(categories) + "\"";
+    }
+
+    /**
+     * @param count The number of Products.
+     * @param versionSum The sum of the versions of the Products.
+     * @param maxId The highest ID of the Products.
+     * @param categories All the Categories.
+     * @return The ETag of the lists of Products.
+     */
+    public static String ofProducts(long count, long versionSum, long maxId, List<Category> categories) {
+        return "\"products-" + count + "-" + versionSum + "-" + maxId + "-" + categoriesVersion(categories) + "\"";
+    }
+
+    /**
+     * @param product The Product, with its Category loaded.
+     * @return When the Product or its Category were last modified, in milliseconds, or -1 if it is not known.
+     */
+    public static long lastModified(Product product) {
+        long productModified = lastModified(product.getUpdatedAt());
+        return product.getCategory() == null ? productModified
+                : Math.max(productModified, lastModified(product.getCategory()));
+    }
+
+    /**
+     * @param category The Category.
+     * @return When the Category was last modified, in milliseconds, or -1 if it is not known.
+     */
+    public static long lastModified(Category category) {
+        return lastModified(category.getUpdatedAt());
+    }
+
+    private static long lastModified(Instant updatedAt) {
+        return updatedAt == null ? -1 : updatedAt.toEpochMilli();
+    }
+
+    private static String categoriesVersion(List<Category> categories) {
+        long versionSum = 0;
+        long maxId = 0;
+        for (Category category : categories) {
+            versionSum += category.getVersion();
+            maxId = Math.max(maxId, category.getId());
+        }
+        return categories.size() + "-" + versionSum + "-" + maxId;
+    }
+
+}
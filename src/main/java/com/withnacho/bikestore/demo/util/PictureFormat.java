@@ -0,0 +1,63 @@
+package com.withnacho.bikestore.demo.util;
+
+/**
+ * This enum recognizes the format of a picture from its first bytes (magic number), so it can be served with the
+ * right content type.
+ */
+public enum PictureFormat {
+
+    JPEG("image/jpeg", true),
+    PNG("image/png", true),
+    GIF("image/gif", true),
+    WEBP("image/webp", true),
+    BMP("image/bmp", false),
+    UNKNOWN("application/octet-stream", false);
+
+    private final String contentType;
+    private final boolean compressed;
+
+    PictureFormat(String contentType, boolean compressed) {
+        this.contentType = contentType;
+        this.compressed = compressed;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return True if the format is already compressed, so deflating it again would gain nothing.
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Recognizes the format of a picture.
+     * @param header The first bytes of the picture, 12 are enough for every format.
+     * @param length The number of valid bytes in header.
+     * @return The format of the picture or UNKNOWN if it is not recognized.
+     */
+    public static PictureFormat sniff(byte[] header, int length) {
+        if (length >= 3 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8 && (header[2] & 0xFF) == 0xFF) {
+            return JPEG;
+        }
+        if (length >= 8 && (header[0] & 0xFF) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G'
+                && header[4] == '\r' && header[5] == '\n' && header[6] == 0x1A && header[7] == '\n') {
+            return PNG;
+        }
+        if (length >= 6 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F' && header[3] == '8'
+                && (header[4] == '7' || header[4] == '9') && header[5] == 'a') {
+            return GIF;
+        }
+        if (length >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+                && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+            return WEBP;
+        }
+        if (length >= 2 && header[0] == 'B' && header[1] == 'M') {
+            return BMP;
+        }
+        return UNKNOWN;
+    }
+
+}
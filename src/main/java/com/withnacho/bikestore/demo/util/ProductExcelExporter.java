@@ -1,31 +1,40 @@
 package com.withnacho.bikestore.demo.util;
 
 import java.io.IOException;
-import java.util.List;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
 
 import com.withnacho.bikestore.demo.entity.Product;
-import jakarta.servlet.ServletOutputStream;
-import jakarta.servlet.http.HttpServletResponse;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFFont;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 /**
  * This class establishes the structure of the EXCEL file with all the Products.
+ * Rows are written through a streaming workbook that only keeps a small window of rows in memory,
+ * so the export runs in constant memory whatever the number of Products.
  */
 public class ProductExcelExporter {
 
-    private XSSFWorkbook workbook;
-    private XSSFSheet sheet;
-    private List<Product> product;
+    // Rows kept in memory before being flushed to the temporary file of the workbook.
+    private static final int ROW_WINDOW = 100;
 
+    // Width of each column, in characters.
+    private static final int[] COLUMN_WIDTHS = {10, 40, 12, 12, 25};
 
-    public ProductExcelExporter (List<Product> products) {
+    private SXSSFWorkbook workbook;
+    private SXSSFSheet sheet;
+    private Stream<Product> product;
+
+
+    public ProductExcelExporter (Stream<Product> products) {
         this.product = products;
-        workbook = new XSSFWorkbook();
+        workbook = new SXSSFWorkbook(ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
     }
 
     private void writeHeaderLine() {
@@ -33,9 +42,9 @@ public class ProductExcelExporter {
         Row row = sheet.createRow(0);
         CellStyle style = workbook.createCellStyle();
 
-        XSSFFont font = workbook.createFont();
+        Font font = workbook.createFont();
         font.setBold(true);
-        font.setFontHeight(16);
+        font.setFontHeightInPoints((short) 16);
         style.setFont(font);
 
         createCell(row, 0, "ID", style);
@@ -44,11 +53,15 @@ public class ProductExcelExporter {
         createCell(row, 3, "Cantidad", style);
         createCell(row, 4, "Categoría", style);
 
+        // Widths are set once: auto-sizing needs every row in memory.
+        for (int column = 0; column < COLUMN_WIDTHS.length; column++) {
+            sheet.setColumnWidth(column, COLUMN_WIDTHS[column] * 256);
+        }
+
     }
 
     private void createCell(Row row, int columnCount, Object value, CellStyle style) {
 
-        sheet.autoSizeColumn(columnCount);
         Cell cell = row.createCell(columnCount);
 
         if(value instanceof Integer) {
@@ -68,35 +81,40 @@ public class ProductExcelExporter {
 
         int rowCount = 1;
         CellStyle style = workbook.createCellStyle();
-        XSSFFont font = workbook.createFont();
-        font.setFontHeight(14);
+        Font font = workbook.createFont();
+        font.setFontHeightInPoints((short) 14);
         style.setFont(font);
 
-        for( Product result: product) {
+        Iterator<Product> products = product.iterator();
 
+        while (products.hasNext()) {
+
+            Product result = products.next();
             Row row = sheet.createRow(rowCount++);
             int columnCount = 0;
             createCell(row, columnCount++, String.valueOf(result.getId()), style);
             createCell(row, columnCount++, result.getName(), style);
             createCell(row, columnCount++, result.getPrice(), style);
             createCell(row, columnCount++, result.getQuantity(), style);
-            createCell(row, columnCount++, result.getCategory().getName(), style);
+            createCell(row, columnCount++, result.getCategory() == null ? "" : result.getCategory().getName(), style);
 
         }
     }
 
 
-    public void export(HttpServletResponse response) throws IOException {
-
-        writeHeaderLine(); //write the header
-        writeDataLines(); //write the data
+    public void export(OutputStream outputStream) throws IOException {
 
-        ServletOutputStream servletOutput = response.getOutputStream();
-        workbook.write(servletOutput);
-        workbook.close();
+        try {
+            writeHeaderLine(); //write the header
+            writeDataLines(); //write the data
 
-        servletOutput.close();
+            workbook.write(outputStream);
+        } finally {
+            workbook.close();
+            workbook.dispose(); //delete the temporary files
+        }
 
+        outputStream.close();
 
     }
 
@@ -0,0 +1,209 @@
+package com.withnacho.bikestore.demo.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.UnsupportedFileFormatException;
+import org.apache.poi.ooxml.POIXMLException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * This class reads, row by row, a file with the columns written by ProductExcelExporter: ID, name, price, quantity
+ * and category. EXCEL (.xlsx) files are parsed as a stream of XML events and CSV files line by line, so only the
+ * current row is kept in memory. The header row is skipped.
+ */
+public class ProductSheetReader {
+
+    /**
+     * Receives the cells of each row, as text. Missing cells are empty strings.
+     */
+    @FunctionalInterface
+    public interface RowHandler {
+        void row(int rowNumber, List<String> cells);
+    }
+
+    private static final byte[] ZIP_SIGNATURE = {0x50, 0x4B, 0x03, 0x04};
+    private static final byte[] OLE2_SIGNATURE = {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0};
+
+    private ProductSheetReader() {
+    }
+
+    /**
+     * Reads the rows of a file. Its format is told by its content, as the exported file has no extension:
+     * EXCEL files are ZIP archives, anything else is read as CSV.
+     * @param inputStream The content of the file.
+     * @param handler Receives each row after the header, with its number in the file (the header is row 1).
+     * @throws IOException If the file cannot be read or is not a valid EXCEL or CSV file.
+     */
+    public static void read(InputStream inputStream, RowHandler handler) throws IOException {
+        BufferedInputStream input = new BufferedInputStream(inputStream);
+        input.mark(ZIP_SIGNATURE.length);
+        byte[] signature = input.readNBytes(ZIP_SIGNATURE.length);
+        input.reset();
+
+        if (Arrays.equals(signature, ZIP_SIGNATURE)) {
+            readExcel(input, handler);
+        } else if (Arrays.equals(signature, OLE2_SIGNATURE)) {
+            throw new IOException("EXCEL 97-2003 (.xls) files are not supported");
+        } else {
+            readCsv(input, handler);
+        }
+    }
+
+    private static void readExcel(InputStream inputStream, RowHandler handler) throws IOException {
+        // Opening the package from a stream would load the whole file in memory; from a file it is read on demand.
+        Path file = Files.createTempFile("product-import", ".xlsx");
+
+        try {
+            Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+
+            try (OPCPackage opcPackage = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+                XSSFReader reader = new XSSFReader(opcPackage);
+                ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(opcPackage, false);
+                XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+
+                if (!sheets.hasNext()) {
+                    return;
+                }
+
+                try (InputStream sheet = sheets.next()) {
+                    XMLReader xmlReader = XMLHelper.newXMLReader();
+                    xmlReader.setContentHandler(new XSSFSheetXMLHandler(
+                            reader.getStylesTable(), strings, new RowCollector(handler), false));
+                    xmlReader.parse(new InputSource(sheet));
+                }
+            } catch (OpenXML4JException | SAXException | ParserConfigurationException | POIXMLException
+                     | UnsupportedFileFormatException e) {
+                throw new IOException("Invalid EXCEL file", e);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void readCsv(InputStream inputStream, RowHandler handler) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+
+        String line = reader.readLine();
+        if (line == null) {
+            return;
+        }
+        if (line.startsWith("\uFEFF")) {
+            line = line.substring(1);
+        }
+
+        // Spreadsheets configured with a decimal comma save CSV files separated by semicolons.
+        char separator = line.indexOf(';') >= 0 && line.indexOf(',') < 0 ? ';' : ',';
+        int lineNumber = 1;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int rowNumber = lineNumber;
+            List<String> cells = new ArrayList<>();
+            StringBuilder cell = new StringBuilder();
+            boolean quoted = false;
+
+            while (true) {
+                for (int i = 0; i < line.length(); i++) {
+                    char c = line.charAt(i);
+                    if (quoted) {
+                        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                            cell.append('"');
+                            i++;
+                        } else if (c == '"') {
+                            quoted = false;
+                        } else {
+                            cell.append(c);
+                        }
+                    } else if (c == '"') {
+                        quoted = true;
+                    } else if (c == separator) {
+                        cells.add(cell.toString().trim());
+                        cell.setLength(0);
+                    } else {
+                        cell.append(c);
+                    }
+                }
+
+                // A quoted cell may contain line breaks: the row goes on in the next line.
+                String next = quoted ? reader.readLine() : null;
+                if (next == null) {
+                    break;
+                }
+                cell.append('\n');
+                line = next;
+                lineNumber++;
+            }
+            cells.add(cell.toString().trim());
+
+            if (!isBlank(cells)) {
+                handler.row(rowNumber, cells);
+            }
+        }
+    }
+
+    private static boolean isBlank(List<String> cells) {
+        return cells.stream().allMatch(String::isEmpty);
+    }
+
+    /**
+     * Collects the cells of each row of the sheet, filling the gaps left by empty cells.
+     */
+    private static class RowCollector implements SheetContentsHandler {
+
+        private final RowHandler handler;
+        private final List<String> cells = new ArrayList<>();
+
+        private RowCollector(RowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells.clear();
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            // rowNum starts at 0 and the first row is the header.
+            if (rowNum > 0 && !isBlank(cells)) {
+                handler.row(rowNum + 1, new ArrayList<>(cells));
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference == null ? cells.size() : new CellReference(cellReference).getCol();
+            while (cells.size() < column) {
+                cells.add("");
+            }
+            cells.add(formattedValue == null ? "" : formattedValue.trim());
+        }
+
+    }
+
+}
@@ -0,0 +1,276 @@
+package com.withnacho.bikestore.demo.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only local file of quantity updates, written before they are acknowledged so a crash cannot lose them.
+ * Every update gets a journal sequence number; once the updates up to a number are in the DB, the files holding
+ * only those updates are deleted. The journal is split in segment files named after their first number, and a
+ * new segment is started when the current one reaches its maximum size.
+ * A record is 24 bytes: the sequence number, the ID of the Product, the delta and a CRC32 of the first 20 bytes,
+ * so a record half written when the process died is detected and dropped on recovery.
+ * The directory is locked while the journal is open: only one process can use it. It also holds the ID of the
+ * journal, generated when the directory is first used, so the checkpoint of every journal is stored apart.
+ */
+public class QuantityJournal implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QuantityJournal.class);
+
+    private static final int RECORD_BYTES = 24;
+    private static final String PREFIX = "quantity-";
+    private static final String SUFFIX = ".journal";
+    private static final String ID_FILE = "journal-id";
+
+    /**
+     * A quantity update read back from the journal.
+     */
+    public record Entry(long seq, long productId, int delta) {
+    }
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final String id;
+    // First sequence number of each segment, the last one being the segment written.
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private FileChannel current;
+    private long nextSeq;
+
+    /**
+     * Opens the journal, generating its ID the first time the directory is used.
+     * @param directory The directory of the segment files, created if it does not exist.
+     * @param maxSegmentBytes The size after which a new segment is started.
+     * @throws IOException If the directory cannot be used, or is locked by another process.
+     */
+    public QuantityJournal(Path directory, long maxSegmentBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxSegmentBytes = Math.max(maxSegmentBytes, RECORD_BYTES);
+        this.lockChannel = FileChannel.open(directory.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Already open in this process.
+            acquired = null;
+        }
+        this.lock = acquired;
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Quantity journal " + directory + " is in use by another process");
+        }
+
+        try {
+            this.id = readOrCreateId(directory);
+        } catch (IOException e) {
+            lock.release();
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The ID of the journal, the same every time the directory is opened.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Reads back the updates not yet in the DB. It must be called once, before the first append.
+     * @param checkpoint The last sequence number already in the DB.
+     * @return The updates after the checkpoint, in order.
+     * @throws IOException If the segments cannot be read.
+     */
+    public synchronized List<Entry> recover(long checkpoint) throws IOException {
+        if (current != null) {
+            throw new IllegalStateException("Quantity journal " + directory + " is already recovered");
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), file);
+            }
+        }
+
+        List<Entry> recovered = new ArrayList<>();
+        long lastSeq = checkpoint;
+        for (Path segment : segments.values()) {
+            lastSeq = Math.max(lastSeq, recover(segment, checkpoint, recovered));
+        }
+
+        // Appends always go to a new segment, the recovered ones are deleted once their updates are in the DB.
+        this.nextSeq = lastSeq + 1;
+        startSegment();
+        return recovered;
+    }
+
+    /**
+     * Appends quantity updates and forces them to the disk.
+     * @param productIds The IDs of the Products.
+     * @param deltas The delta of each Product, in the same order.
+     * @return The sequence number of the last update.
+     * @throws IOException If the updates could not be written: none of them must be acknowledged.
+     */
+    public synchronized long append(long[] productIds, int[] deltas) throws IOException {
+        if (current == null) {
+            throw new IllegalStateException("Quantity journal " + directory + " is not recovered");
+        }
+        if (current.size() >= maxSegmentBytes) {
+            current.close();
+            startSegment();
+        }
+
+        long position = current.size();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * productIds.length);
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < productIds.length; i++) {
+            int start = buffer.position();
+            buffer.putLong(nextSeq + i).putLong(productIds[i]).putInt(deltas[i]);
+            crc.reset();
+            crc.update(buffer.array(), start, RECORD_BYTES - 4);
+            buffer.putInt((int) crc.getValue());
+        }
+        buffer.flip();
+
+        try {
+            while (buffer.hasRemaining()) {
+                current.write(buffer, position + buffer.position());
+            }
+            current.force(false);
+        } catch (IOException e) {
+            // Drops whatever was written, so the numbers are not reused by records already on the disk.
+            current.truncate(position);
+            throw e;
+        }
+
+        nextSeq += productIds.length;
+        return nextSeq - 1;
+    }
+
+    /**
+     * Deletes the segments whose updates are all in the DB.
+     * @param checkpoint The last sequence number in the DB.
+     */
+    public synchronized void checkpoint(long checkpoint) {
+        Map.Entry<Long, Path> segment = segments.firstEntry();
+        Long following;
+
+        // A segment ends right before the next one starts; the segment written is never deleted.
+        while (segment != null && (following = segments.higherKey(segment.getKey())) != null
+                && following - 1 <= checkpoint) {
+            try {
+                Files.deleteIfExists(segment.getValue());
+            } catch (IOException e) {
+                LOGGER.warn("Could not delete quantity journal segment {}", segment.getValue(), e);
+                return;
+            }
+            segments.remove(segment.getKey());
+            segment = segments.firstEntry();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (current != null) {
+                current.close();
+            }
+        } finally {
+            lock.release();
+            lockChannel.close();
+        }
+    }
+
+    private void startSegment() throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, nextSeq, SUFFIX));
+        current = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        segments.put(nextSeq, file);
+    }
+
+    // Written to a temporary file first, so a crash cannot leave an empty ID.
+    private static String readOrCreateId(Path directory) throws IOException {
+        Path file = directory.resolve(ID_FILE);
+        if (Files.exists(file)) {
+            String id = Files.readString(file, StandardCharsets.UTF_8).trim();
+            if (id.isEmpty()) {
+                throw new IOException("Quantity journal " + directory + " has an empty ID");
+            }
+            return id;
+        }
+
+        String id = UUID.randomUUID().toString();
+        Path temporary = directory.resolve(ID_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(id.getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        return id;
+    }
+
+    // Reads the valid records of a segment, cutting it at the first one that is incomplete or corrupt.
+    private static long recover(Path segment, long checkpoint, List<Entry> recovered) throws IOException {
+        long lastSeq = checkpoint;
+
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+            CRC32 crc = new CRC32();
+            long position = 0;
+
+            while (true) {
+                record.clear();
+                while (record.hasRemaining() && channel.read(record, position + record.position()) > 0) {
+                    // Reads the whole record.
+                }
+                if (record.hasRemaining()) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(record.array(), 0, RECORD_BYTES - 4);
+                if ((int) crc.getValue() != record.getInt(RECORD_BYTES - 4)) {
+                    break;
+                }
+
+                Entry entry = new Entry(record.getLong(0), record.getLong(8), record.getInt(16));
+                if (entry.seq() > checkpoint) {
+                    recovered.add(entry);
+                }
+                lastSeq = Math.max(lastSeq, entry.seq());
+                position += RECORD_BYTES;
+            }
+
+            if (position < channel.size()) {
+                LOGGER.warn("Dropped {} bytes of an incomplete quantity update at the end of {}",
+                        channel.size() - position, segment);
+                channel.truncate(position);
+                channel.force(true);
+            }
+        }
+        return lastSeq;
+    }
+
+}
@@ -0,0 +1,195 @@
+package com.withnacho.bikestore.demo.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * This class implements the logic to compress and decompress pictures in order to store and retrieve them in and from a DB.
+ * Deflaters and Inflaters hold native zlib memory, so they are pooled and reused instead of being created on every
+ * call, and the ones that do not fit in the pool are ended straight away instead of waiting for the garbage collector.
+ */
+@Component
+public class ZLibCodec implements DisposableBean {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final int level;
+    private final BlockingQueue<Deflater> deflaters;
+    private final BlockingQueue<Inflater> inflaters;
+
+    public ZLibCodec(@Value("${bikestore.zlib.level:-1}") int level,
+                     @Value("${bikestore.zlib.pool-size:0}") int poolSize) {
+        int capacity = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        this.level = level;
+        this.deflaters = new ArrayBlockingQueue<>(capacity);
+        this.inflaters = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Compresses a picture before storing it in the DB.
+     * @param data The original bytes.
+     * @return The compressed bytes, in an array of their exact size.
+     */
+    public byte[] compress(byte[] data) {
+        Deflater deflater = borrowDeflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            // zlib worst case (deflateBound), so a single call is enough.
+            byte[] buffer = new byte[data.length + (data.length >> 12) + (data.length >> 14) + (data.length >> 25) + 13];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length + CHUNK_SIZE);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+        } finally {
+            release(deflater);
+        }
+    }
+
+    /**
+     * Decompresses a picture retrieved from the DB.
+     * @param data The compressed bytes.
+     * @param originalSize The size of the original bytes if it is known, so the result is allocated once with its
+     *                     exact size, or a negative number if it is not.
+     * @return The original bytes.
+     */
+    public byte[] decompress(byte[] data, int originalSize) {
+        Inflater inflater = borrowInflater();
+        try {
+            inflater.setInput(data);
+
+            byte[] buffer = new byte[originalSize >= 0 ? originalSize : Math.max(data.length * 2, CHUNK_SIZE)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, 64));
+                }
+                int count = inflater.inflate(buffer, length, buffer.length - length);
+                if (count == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated zlib data");
+                }
+                length += count;
+            }
+            return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupted zlib data", e);
+        } finally {
+            release(inflater);
+        }
+    }
+
+    /**
+     * Decompresses a picture straight into a stream, without materializing it.
+     * @param data The compressed bytes.
+     * @param outputStream The stream where the original bytes are written.
+     * @return The number of bytes written.
+     * @throws IOException
+     */
+    public long decompress(byte[] data, OutputStream outputStream) throws IOException {
+        Inflater inflater = borrowInflater();
+        try {
+            inflater.setInput(data);
+
+            byte[] buffer = new byte[CHUNK_SIZE];
+            long length = 0;
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated zlib data");
+                }
+                outputStream.write(buffer, 0, count);
+                length += count;
+            }
+            return length;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupted zlib data", e);
+        } finally {
+            release(inflater);
+        }
+    }
+
+    /**
+     * Decompresses a picture straight into a buffer supplied by the caller.
+     * @param data The compressed bytes.
+     * @param target The buffer where the original bytes are written, from its position. It must have room for them.
+     * @return The number of bytes written.
+     */
+    public int decompress(byte[] data, ByteBuffer target) {
+        Inflater inflater = borrowInflater();
+        try {
+            inflater.setInput(data);
+
+            int length = 0;
+            while (!inflater.finished()) {
+                int count = inflater.inflate(target);
+                if (count == 0 && !inflater.finished()) {
+                    if (inflater.needsInput() || inflater.needsDictionary()) {
+                        throw new IllegalArgumentException("Truncated zlib data");
+                    }
+                    if (!target.hasRemaining()) {
+                        throw new IllegalArgumentException("The target buffer is too small");
+                    }
+                }
+                length += count;
+            }
+            return length;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupted zlib data", e);
+        } finally {
+            release(inflater);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            inflater.end();
+        }
+    }
+
+    private Deflater borrowDeflater() {
+        Deflater deflater = deflaters.poll();
+        return deflater != null ? deflater : new Deflater(level);
+    }
+
+    private Inflater borrowInflater() {
+        Inflater inflater = inflaters.poll();
+        return inflater != null ? inflater : new Inflater();
+    }
+
+    private void release(Deflater deflater) {
+        deflater.reset();
+        if (!deflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    private void release(Inflater inflater) {
+        inflater.reset();
+        if (!inflaters.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.withnacho.bikestore.demo.dao;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.withnacho.bikestore.demo.config.SecondLevelCacheConfig;
+import com.withnacho.bikestore.demo.entity.Category;
+import com.withnacho.bikestore.demo.entity.Product;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import(SecondLevelCacheConfig.class)
+class IProductDaoTests {
+
+	@Autowired
+	private IProductDao productDao;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	private Statistics statistics;
+
+	@BeforeEach
+	void setUp() {
+		statistics = entityManager.getEntityManager().getEntityManagerFactory()
+				.unwrap(SessionFactory.class).getStatistics();
+	}
+
+	@Test
+	void findAllWithCategoryUsesOneStatementWhateverTheNumberOfRows() {
+		assertThat(countStatements(2, productDao::findAllWithCategory)).isEqualTo(1);
+		assertThat(countStatements(40, productDao::findAllWithCategory)).isEqualTo(1);
+	}
+
+	@Test
+	void findWithCategoryByNameUsesOneStatementWhateverTheNumberOfRows() {
+		assertThat(countStatements(2, () -> productDao.findWithCategoryByNameContainingIgnoreCase("BIKE"))).isEqualTo(1);
+		assertThat(countStatements(40, () -> productDao.findWithCategoryByNameContainingIgnoreCase("BIKE"))).isEqualTo(1);
+	}
+
+	@Test
+	void keysetPageUsesOneStatementWhateverTheNumberOfRows() {
+		assertThat(countStatements(2, () -> productDao.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 50))))
+				.isEqualTo(1);
+		assertThat(countStatements(40, () -> productDao.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 50))))
+				.isEqualTo(1);
+	}
+
+	// Persists the given number of Products, each in its own Category, and counts the statements needed
+	// to read them and the names of their Categories.
+	private long countStatements(int products, Supplier<List<Product>> query) {
+		entityManager.getEntityManager().createQuery("delete from Product").executeUpdate();
+
+		for (int i = 0; i < products; i++) {
+			Category category = new Category();
+			category.setName("Category " + i);
+			entityManager.persist(category);
+
+			Product product = new Product();
+			product.setName("Bike " + i);
+			product.setCategory(category);
+			entityManager.persist(product);
+		}
+		entityManager.flush();
+		entityManager.clear();
+		statistics.clear();
+
+		List<Product> found = query.get();
+		found.forEach((product) -> product.getCategory().getName());
+
+		assertThat(found).hasSize(products);
+		return statistics.getPrepareStatementCount();
+	}
+
+}
@@ -0,0 +1,181 @@
+package com.withnacho.bikestore.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import com.withnacho.bikestore.demo.event.ProductChangedEvent;
+import com.withnacho.bikestore.demo.event.ProductSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+class ProductEventBroadcasterTests {
+
+	private static final int BUFFER_SIZE = 4;
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	// Released to let the clients receive what they were sent.
+	private final CountDownLatch connected = new CountDownLatch(1);
+	private final List<RecordingEmitter> emitters = new CopyOnWriteArrayList<>();
+
+	private final ProductEventBroadcaster broadcaster = new ProductEventBroadcaster(BUFFER_SIZE, 10, 60000, 3600,
+			meterRegistry) {
+		@Override
+		protected SseEmitter newEmitter() {
+			RecordingEmitter emitter = new RecordingEmitter();
+			emitters.add(emitter);
+			return emitter;
+		}
+	};
+
+	@AfterEach
+	void destroy() {
+		connected.countDown();
+		broadcaster.destroy();
+	}
+
+	@Test
+	void aFastClientReceivesEveryChangeInOrder() {
+		RecordingEmitter emitter = subscribe();
+		connected.countDown();
+
+		for (int i = 1; i <= 3; i++) {
+			changed(1L, i);
+			await(emitter, 1 + i);
+		}
+
+		assertThat(emitter.events).containsExactly(":connected", "product 1 quantity=1", "product 2 quantity=2",
+				"product 3 quantity=3");
+	}
+
+	@Test
+	void aSlowClientIsSentTheLastChangeOfEachProduct() {
+		RecordingEmitter emitter = subscribe();
+
+		// The client is still receiving the first comment: a burst of changes to the same Products piles up.
+		for (int i = 1; i <= 500; i++) {
+			changed(i % BUFFER_SIZE + 1L, i);
+		}
+		connected.countDown();
+		await(emitter, 1 + BUFFER_SIZE);
+
+		assertThat(emitter.events).containsExactly(":connected", "product 497 quantity=497",
+				"product 498 quantity=498", "product 499 quantity=499", "product 500 quantity=500");
+		assertThat(emitter.completed).isFalse();
+		assertThat(meterRegistry.counter("bikestore.sse.resyncs").count()).isZero();
+	}
+
+	@Test
+	void aClientTooFarBehindIsSentAResyncAndTheFollowingChanges() {
+		RecordingEmitter emitter = subscribe();
+
+		for (int i = 1; i <= BUFFER_SIZE + 1; i++) {
+			changed((long) i, i);
+		}
+		changed(1L, 100);
+		connected.countDown();
+		await(emitter, 3);
+
+		assertThat(emitter.events).containsExactly(":connected", "resync 5", "product 6 quantity=100");
+		assertThat(emitter.completed).isFalse();
+		assertThat(meterRegistry.counter("bikestore.sse.resyncs").count()).isEqualTo(1);
+
+		changed(2L, 200);
+		await(emitter, 4);
+		assertThat(emitter.events).endsWith("product 7 quantity=200");
+	}
+
+	@Test
+	void everyClientHasItsOwnBuffer() {
+		RecordingEmitter slow = subscribe();
+		for (int i = 1; i <= BUFFER_SIZE + 1; i++) {
+			changed((long) i, i);
+		}
+		RecordingEmitter late = subscribe();
+		changed(1L, 100);
+		connected.countDown();
+
+		await(slow, 3);
+		await(late, 2);
+		assertThat(slow.events).contains("resync 5");
+		assertThat(late.events).containsExactly(":connected", "product 6 quantity=100");
+	}
+
+	private RecordingEmitter subscribe() {
+		assertThat(broadcaster.subscribe()).isPresent();
+		return emitters.get(emitters.size() - 1);
+	}
+
+	private void changed(Long productId, int quantity) {
+		ProductSnapshot before = new ProductSnapshot(productId, "Bike " + productId, 100, 0, 1L);
+		ProductSnapshot after = new ProductSnapshot(productId, "Bike " + productId, 100, quantity, 1L);
+		broadcaster.onProductChanged(ProductChangedEvent.updated(before, after));
+	}
+
+	private static void await(RecordingEmitter emitter, int events) {
+		awaitUntil(() -> emitter.events.size() >= events);
+		assertThat(emitter.events).hasSize(events);
+	}
+
+	private static void awaitUntil(BooleanSupplier condition) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+			Thread.onSpinWait();
+		}
+		assertThat(condition.getAsBoolean()).isTrue();
+	}
+
+	/**
+	 * Records the events sent, as "name id quantity=N" or ":comment", blocking until connected is released.
+	 */
+	private final class RecordingEmitter extends SseEmitter {
+
+		private final List<String> events = new CopyOnWriteArrayList<>();
+		private volatile boolean completed;
+
+		@Override
+		public void send(SseEventBuilder builder) throws IOException {
+			try {
+				connected.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			String text = builder.build().stream().map((data) -> data.getData().toString())
+					.collect(Collectors.joining());
+			events.add(describe(text));
+		}
+
+		@Override
+		public void complete() {
+			completed = true;
+		}
+
+		private static String describe(String text) {
+			if (text.startsWith(":")) {
+				return text.trim();
+			}
+			String id = field(text, "id:");
+			String name = field(text, "event:");
+			String data = field(text, "data:");
+			int quantity = data.indexOf("quantity=");
+			return quantity < 0 ? name + " " + id
+					: name + " " + id + " " + data.substring(quantity, data.indexOf(',', quantity));
+		}
+
+		private static String field(String text, String prefix) {
+			int start = text.indexOf(prefix) + prefix.length();
+			int end = text.indexOf('\n', start);
+			return text.substring(start, end < 0 ? text.length() : end);
+		}
+
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.withnacho.bikestore.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import com.withnacho.bikestore.demo.dao.IProductDao;
+import com.withnacho.bikestore.demo.dao.ProductNameProjection;
+import com.withnacho.bikestore.demo.event.ProductChangedEvent;
+import com.withnacho.bikestore.demo.event.ProductSnapshot;
+import org.junit.jupiter.api.Test;
+
+class ProductNameIndexTests {
+
+	private final IProductDao productDao = mock(IProductDao.class);
+	private final ProductNameIndex index = new ProductNameIndex(productDao);
+
+	@Test
+	void itIsNotReadyBeforeTheBuild() {
+		assertThat(index.isReady()).isFalse();
+		assertThat(index.search("bike")).isEmpty();
+	}
+
+	@Test
+	void findsTheNamesContainingTheTextIgnoringCase() {
+		build(name(3L, "Mountain Bike"), name(1L, "Road bike"), name(2L, "Helmet"), name(4L, "BIKE rack"));
+
+		assertThat(index.search("bike")).containsExactly(1L, 3L, 4L);
+		assertThat(index.search("IKE R")).containsExactly(4L);
+		assertThat(index.search("road bike")).containsExactly(1L);
+		assertThat(index.search("bikes")).isEmpty();
+		assertThat(index.search("xyz")).isEmpty();
+	}
+
+	@Test
+	void textsShorterThanATrigramAreMatchedAgainstEveryName() {
+		build(name(1L, "Road bike"), name(2L, "Helmet"), name(3L, "Lock"));
+
+		assertThat(index.search("el")).containsExactly(2L);
+		assertThat(index.search("O")).containsExactly(1L, 3L);
+		assertThat(index.search("")).containsExactly(1L, 2L, 3L);
+	}
+
+	@Test
+	void havingEveryTrigramIsNotEnough() {
+		// Contains "abc" and "bcd", but not "abcd".
+		build(name(1L, "abc-bcd"), name(2L, "xabcdx"));
+
+		assertThat(index.search("abcd")).containsExactly(2L);
+	}
+
+	@Test
+	void followsTheChangesOfTheNames() {
+		build(name(1L, "Road bike"), name(2L, "Helmet"));
+
+		index.onProductChanged(ProductChangedEvent.updated(snapshot(1L, "Road bike"), snapshot(1L, "Gravel bike")));
+		index.onProductChanged(ProductChangedEvent.created(snapshot(5L, "Kids bike")));
+		index.onProductChanged(ProductChangedEvent.deleted(snapshot(2L, "Helmet")));
+
+		assertThat(index.search("road")).isEmpty();
+		assertThat(index.search("gravel")).containsExactly(1L);
+		assertThat(index.search("bike")).containsExactly(1L, 5L);
+		assertThat(index.search("helmet")).isEmpty();
+		assertThat(index.search("el")).containsExactly(1L);
+	}
+
+	@Test
+	void theBuildDoesNotOverrideChangesCommittedMeanwhile() {
+		// The read of the names sees the DB before these changes.
+		when(productDao.findAllNames()).thenAnswer((invocation) -> {
+			index.onProductChanged(ProductChangedEvent.updated(snapshot(1L, "Road bike"), snapshot(1L, "Gravel bike")));
+			index.onProductChanged(ProductChangedEvent.deleted(snapshot(2L, "Helmet")));
+			return List.of(name(1L, "Road bike"), name(2L, "Helmet"), name(3L, "Lock"));
+		});
+		index.build();
+
+		assertThat(index.isReady()).isTrue();
+		assertThat(index.search("road")).isEmpty();
+		assertThat(index.search("gravel")).containsExactly(1L);
+		assertThat(index.search("helmet")).isEmpty();
+		assertThat(index.search("lock")).containsExactly(3L);
+	}
+
+	private void build(ProductNameProjection... names) {
+		when(productDao.findAllNames()).thenReturn(List.of(names));
+		index.build();
+	}
+
+	private static ProductSnapshot snapshot(Long id, String name) {
+		return new ProductSnapshot(id, name, 100, 1, 1L);
+	}
+
+	private static ProductNameProjection name(Long id, String name) {
+		return new ProductNameProjection() {
+			@Override
+			public Long getId() {
+				return id;
+			}
+
+			@Override
+			public String getName() {
+				return name;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,159 @@
+package com.withnacho.bikestore.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.withnacho.bikestore.demo.dao.IProductDao;
+import com.withnacho.bikestore.demo.dao.ProductNameProjection;
+import com.withnacho.bikestore.demo.event.ProductChangedEvent;
+import com.withnacho.bikestore.demo.event.ProductSnapshot;
+import com.withnacho.bikestore.demo.response.ProductSuggestion;
+import org.junit.jupiter.api.Test;
+
+class ProductNameSuggesterTests {
+
+	private final IProductDao productDao = mock(IProductDao.class);
+	private final ProductNameSuggester suggester = new ProductNameSuggester(productDao);
+
+	@Test
+	void nothingIsSuggestedBeforeTheBuild() {
+		assertThat(suggester.isReady()).isFalse();
+		assertThat(suggester.suggest("a", 10)).isEmpty();
+	}
+
+	@Test
+	void suggestsTheNamesStartingWithThePrefixIgnoringCase() {
+		build(name(1L, "Roadster"), name(2L, "road helmet"), name(3L, "Road bike"), name(4L, "Rock"),
+				name(5L, "Mountain bike"), name(6L, "Roa"));
+
+		assertThat(ids(suggester.suggest("ROAD", 10))).containsExactly(3L, 2L, 1L);
+		assertThat(ids(suggester.suggest("road ", 10))).containsExactly(3L, 2L);
+		assertThat(ids(suggester.suggest("roa", 10))).containsExactly(6L, 3L, 2L, 1L);
+		assertThat(ids(suggester.suggest("ro", 2))).containsExactly(6L, 3L);
+		assertThat(ids(suggester.suggest("", 10))).containsExactly(5L, 6L, 3L, 2L, 1L, 4L);
+		// Before the first name, between two names and after the last one.
+		assertThat(suggester.suggest("a", 10)).isEmpty();
+		assertThat(suggester.suggest("roadz", 10)).isEmpty();
+		assertThat(suggester.suggest("z", 10)).isEmpty();
+		assertThat(suggester.suggest("rock", 10)).containsExactly(new ProductSuggestion(4L, "Rock"));
+	}
+
+	@Test
+	void namesEqualIgnoringCaseAreSortedById() {
+		build(name(3L, "Bike"), name(1L, "bike"), name(2L, "BIKE"));
+		suggester.onProductChanged(created(0L, "bIKE"));
+		suggester.onProductChanged(created(4L, "Bike"));
+
+		assertThat(suggester.suggest("bike", 10)).containsExactly(new ProductSuggestion(0L, "bIKE"),
+				new ProductSuggestion(1L, "bike"), new ProductSuggestion(2L, "BIKE"), new ProductSuggestion(3L, "Bike"),
+				new ProductSuggestion(4L, "Bike"));
+	}
+
+	@Test
+	void aNameThatOnlyChangesCaseIsReplaced() {
+		build(name(1L, "Bike"));
+
+		suggester.onProductChanged(renamed(1L, "Bike", "BIKE"));
+		assertThat(suggester.suggest("b", 10)).containsExactly(new ProductSuggestion(1L, "BIKE"));
+
+		suggester.onProductChanged(renamed(1L, "BIKE", "Bike"));
+		assertThat(suggester.suggest("b", 10)).containsExactly(new ProductSuggestion(1L, "Bike"));
+	}
+
+	@Test
+	void manyChangesGiveTheSameSuggestionsAsARebuild() {
+		Map<Long, String> expected = new TreeMap<>();
+		List<ProductNameProjection> initial = new ArrayList<>();
+		for (long id = 1; id <= 100; id++) {
+			initial.add(name(id, "Item " + id));
+			expected.put(id, "Item " + id);
+		}
+		build(initial.toArray(new ProductNameProjection[0]));
+
+		// Enough changes for the pending ones to be merged several times.
+		for (long id = 101; id <= 400; id++) {
+			suggester.onProductChanged(created(id, "item " + id));
+			expected.put(id, "item " + id);
+		}
+		for (long id = 1; id <= 400; id += 3) {
+			suggester.onProductChanged(ProductChangedEvent.deleted(snapshot(id, expected.remove(id))));
+		}
+		for (long id = 2; id <= 400; id += 5) {
+			if (expected.containsKey(id)) {
+				suggester.onProductChanged(renamed(id, expected.get(id), "Renamed " + id));
+				expected.put(id, "Renamed " + id);
+			}
+		}
+
+		List<ProductSuggestion> all = new ArrayList<>();
+		expected.forEach((id, name) -> all.add(new ProductSuggestion(id, name)));
+		all.sort(Comparator.comparing((ProductSuggestion suggestion) -> suggestion.name().toLowerCase(Locale.ROOT))
+				.thenComparing(ProductSuggestion::id));
+
+		assertThat(suggester.suggest("", 1000)).isEqualTo(all);
+		assertThat(suggester.suggest("item 1", 1000)).isEqualTo(all.stream()
+				.filter((suggestion) -> suggestion.name().toLowerCase(Locale.ROOT).startsWith("item 1")).toList());
+		assertThat(suggester.suggest("renamed", 5)).isEqualTo(all.stream()
+				.filter((suggestion) -> suggestion.name().startsWith("Renamed")).limit(5).toList());
+	}
+
+	@Test
+	void changesCommittedDuringTheBuildAreNotLost() {
+		// The read of the names sees the DB before the first two changes, and after the third.
+		when(productDao.findAllNames()).thenAnswer((invocation) -> {
+			suggester.onProductChanged(renamed(1L, "Bell", "Bolt"));
+			suggester.onProductChanged(created(2L, "Brake"));
+			suggester.onProductChanged(created(3L, "Basket"));
+			return List.of(name(1L, "Bell"), name(3L, "Basket"));
+		});
+		suggester.build();
+
+		assertThat(suggester.isReady()).isTrue();
+		assertThat(suggester.suggest("b", 10)).containsExactly(new ProductSuggestion(3L, "Basket"),
+				new ProductSuggestion(1L, "Bolt"), new ProductSuggestion(2L, "Brake"));
+	}
+
+	private void build(ProductNameProjection... names) {
+		when(productDao.findAllNames()).thenReturn(List.of(names));
+		suggester.build();
+	}
+
+	private static List<Long> ids(List<ProductSuggestion> suggestions) {
+		return suggestions.stream().map(ProductSuggestion::id).toList();
+	}
+
+	private static ProductChangedEvent created(Long id, String name) {
+		return ProductChangedEvent.created(snapshot(id, name));
+	}
+
+	private static ProductChangedEvent renamed(Long id, String before, String after) {
+		return ProductChangedEvent.updated(snapshot(id, before), snapshot(id, after));
+	}
+
+	private static ProductSnapshot snapshot(Long id, String name) {
+		return new ProductSnapshot(id, name, 100, 1, 1L);
+	}
+
+	private static ProductNameProjection name(Long id, String name) {
+		return new ProductNameProjection() {
+			@Override
+			public Long getId() {
+				return id;
+			}
+
+			@Override
+			public String getName() {
+				return name;
+			}
+		};
+	}
+
+}
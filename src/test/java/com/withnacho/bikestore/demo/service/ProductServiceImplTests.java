@@ -0,0 +1,59 @@
+package com.withnacho.bikestore.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.withnacho.bikestore.demo.dao.ICategoryDao;
+import com.withnacho.bikestore.demo.dao.IProductDao;
+import com.withnacho.bikestore.demo.entity.Category;
+import com.withnacho.bikestore.demo.entity.Product;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class ProductServiceImplTests {
+
+	@Autowired
+	private IProductService productService;
+
+	@Autowired
+	private IProductDao productDao;
+
+	@Autowired
+	private ICategoryDao categoryDao;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Test
+	void repeatedFindProductByIdIsServedFromTheSecondLevelCache() {
+		Category category = new Category();
+		category.setName("Bikes");
+		category = categoryDao.save(category);
+
+		Product product = new Product();
+		product.setName("Mountain bike");
+		product.setCategory(category);
+		Long id = productDao.save(product).getId();
+
+		// The Category is cached as it is read with every Product: only the Product has to be read.
+		entityManagerFactory.getCache().evictAll();
+		categoryDao.findById(category.getId());
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		for (int i = 0; i < 3; i++) {
+			assertThat(productService.findProductById(id).getStatusCode()).isEqualTo(HttpStatus.OK);
+		}
+
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		assertThat(statistics.getDomainDataRegionStatistics(Product.class.getName()).getHitCount()).isEqualTo(2);
+	}
+
+}
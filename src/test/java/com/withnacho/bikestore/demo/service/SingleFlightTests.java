@@ -0,0 +1,150 @@
+package com.withnacho.bikestore.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTests {
+
+	private static final int CALLERS = 8;
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final SingleFlight<String, Object> singleFlight = new SingleFlight<>("test", meterRegistry);
+	private final ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+	// Holds the reads until released.
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final AtomicInteger reads = new AtomicInteger();
+
+	@AfterEach
+	void shutdown() {
+		release.countDown();
+		callers.shutdownNow();
+	}
+
+	@Test
+	void concurrentCallersShareOneRead() throws Exception {
+		Object value = new Object();
+		List<Future<Object>> results = callConcurrently("key", () -> value);
+
+		awaitUntil(() -> calls("shared") == CALLERS - 1);
+		assertThat(inFlight()).isEqualTo(1);
+		release.countDown();
+
+		for (Future<Object> result : results) {
+			assertThat(result.get()).isSameAs(value);
+		}
+		assertThat(reads.get()).isEqualTo(1);
+		assertThat(calls("executed")).isEqualTo(1);
+		assertThat(calls("shared")).isEqualTo(CALLERS - 1);
+		assertThat(inFlight()).isZero();
+	}
+
+	@Test
+	void aFailureReachesEveryCaller() throws Exception {
+		IllegalStateException failure = new IllegalStateException("read failed");
+		List<Future<Object>> results = callConcurrently("key", () -> {
+			throw failure;
+		});
+
+		awaitUntil(() -> calls("shared") == CALLERS - 1);
+		release.countDown();
+
+		for (Future<Object> result : results) {
+			assertThatThrownBy(result::get).isInstanceOf(ExecutionException.class).cause().isSameAs(failure);
+		}
+		assertThat(reads.get()).isEqualTo(1);
+		assertThat(inFlight()).isZero();
+	}
+
+	@Test
+	void theKeyIsRemovedOnceTheReadFinishes() {
+		release.countDown();
+
+		assertThat(singleFlight.execute("key", () -> "first")).isEqualTo("first");
+		assertThat(singleFlight.execute("key", () -> "second")).isEqualTo("second");
+		assertThatThrownBy(() -> singleFlight.execute("key", () -> {
+			throw new IllegalStateException("read failed");
+		})).isInstanceOf(IllegalStateException.class);
+		assertThat(singleFlight.execute("key", () -> "third")).isEqualTo("third");
+
+		assertThat(calls("executed")).isEqualTo(4);
+		assertThat(calls("shared")).isZero();
+		assertThat(inFlight()).isZero();
+	}
+
+	@Test
+	void differentKeysAreReadSeparately() throws Exception {
+		Future<Object> first = callers.submit(() -> singleFlight.execute("first", this::blockingRead));
+		Future<Object> second = callers.submit(() -> singleFlight.execute("second", this::blockingRead));
+
+		awaitUntil(() -> inFlight() == 2);
+		release.countDown();
+
+		assertThat(List.of(first.get(), second.get())).containsExactlyInAnyOrder(1, 2);
+		assertThat(calls("executed")).isEqualTo(2);
+		assertThat(calls("shared")).isZero();
+	}
+
+	// The first caller starts the read, which waits for the others to join it.
+	private List<Future<Object>> callConcurrently(String key, Supplier<Object> read) throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		List<Future<Object>> results = new ArrayList<>();
+		results.add(callers.submit(() -> singleFlight.execute(key, () -> {
+			started.countDown();
+			blockingRead();
+			return read.get();
+		})));
+
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+		for (int i = 1; i < CALLERS; i++) {
+			results.add(callers.submit(() -> singleFlight.execute(key, () -> {
+				reads.incrementAndGet();
+				return null;
+			})));
+		}
+		return results;
+	}
+
+	private Object blockingRead() {
+		int read = reads.incrementAndGet();
+		try {
+			release.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return read;
+	}
+
+	private double calls(String outcome) {
+		return meterRegistry.get("bikestore.coalescing.calls").tag("name", "test").tag("outcome", outcome).counter()
+				.count();
+	}
+
+	private double inFlight() {
+		return meterRegistry.get("bikestore.coalescing.in.flight").tag("name", "test").gauge().value();
+	}
+
+	private static void awaitUntil(BooleanSupplier condition) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+			Thread.onSpinWait();
+		}
+		assertThat(condition.getAsBoolean()).isTrue();
+	}
+
+}
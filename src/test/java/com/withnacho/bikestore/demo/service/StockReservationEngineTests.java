@@ -0,0 +1,158 @@
+package com.withnacho.bikestore.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.withnacho.bikestore.demo.dao.ICategoryDao;
+import com.withnacho.bikestore.demo.dao.IProductDao;
+import com.withnacho.bikestore.demo.dao.IStockReservationDao;
+import com.withnacho.bikestore.demo.dao.ProductStockDao;
+import com.withnacho.bikestore.demo.entity.Category;
+import com.withnacho.bikestore.demo.entity.Product;
+import com.withnacho.bikestore.demo.entity.ReservationStatus;
+import com.withnacho.bikestore.demo.entity.StockReservation;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class StockReservationEngineTests {
+
+	private static final int INITIAL_QUANTITY = 100;
+	private static final Duration TTL = Duration.ofMinutes(15);
+
+	@Autowired
+	private StockReservationEngine stockReservationEngine;
+
+	@Autowired
+	private IStockReservationService stockReservationService;
+
+	@Autowired
+	private IStockReservationDao stockReservationDao;
+
+	@Autowired
+	private IProductDao productDao;
+
+	@Autowired
+	private ICategoryDao categoryDao;
+
+	@Autowired
+	private ProductStockDao productStockDao;
+
+	@Autowired
+	private ProductChangeSequence productChangeSequence;
+
+	@Autowired
+	private ProductStockChanges productStockChanges;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void concurrentReservationsNeitherOversellNorLoseUnits() throws Exception {
+		List<Long> productIds = List.of(newProduct(), newProduct());
+		AtomicInteger reserved = new AtomicInteger();
+		AtomicInteger rejected = new AtomicInteger();
+
+		// Far more units are asked for than there are, while some reservations are given back or sold.
+		ExecutorService checkouts = Executors.newFixedThreadPool(16);
+		List<Future<?>> results = new ArrayList<>();
+		for (int i = 0; i < 600; i++) {
+			int checkout = i;
+			results.add(checkouts.submit(() -> {
+				Long productId = productIds.get(checkout % productIds.size());
+				StockReservationEngine.Result result = stockReservationEngine.reserve(productId,
+						ThreadLocalRandom.current().nextInt(1, 4), TTL);
+
+				if (result.outcome() == StockReservationEngine.Outcome.RESERVED) {
+					reserved.incrementAndGet();
+					if (checkout % 3 == 0) {
+						stockReservationService.release(result.reservation().getId());
+					} else if (checkout % 5 == 0) {
+						stockReservationService.commit(result.reservation().getId());
+					}
+				} else {
+					assertThat(result.outcome()).isEqualTo(StockReservationEngine.Outcome.INSUFFICIENT_STOCK);
+					rejected.incrementAndGet();
+				}
+			}));
+		}
+		for (Future<?> result : results) {
+			result.get();
+		}
+		checkouts.shutdown();
+
+		assertThat(reserved.get()).isPositive();
+		assertThat(rejected.get()).isPositive();
+
+		for (Long productId : productIds) {
+			int quantity = jdbcTemplate.queryForObject("select quantity from product where id = ?", Integer.class,
+					productId);
+			int held = 0;
+			for (StockReservation reservation : stockReservationDao.findAll()) {
+				if (reservation.getProductId().equals(productId)
+						&& reservation.getStatus() != ReservationStatus.RELEASED) {
+					held += reservation.getQuantity();
+				}
+			}
+
+			assertThat(quantity).isBetween(0, INITIAL_QUANTITY);
+			assertThat(quantity + held).isEqualTo(INITIAL_QUANTITY);
+		}
+	}
+
+	@Test
+	void aReservationForAMissingProductIsNotFound() {
+		assertThat(stockReservationEngine.reserve(Long.MAX_VALUE, 1, TTL).outcome())
+				.isEqualTo(StockReservationEngine.Outcome.PRODUCT_NOT_FOUND);
+	}
+
+	@Test
+	void onlyARunningEngineAcceptsReservations() {
+		Long productId = newProduct();
+		StockReservationEngine engine = new StockReservationEngine(productStockDao, productChangeSequence,
+				transactionTemplate, productStockChanges, 2, 1000, 5000);
+
+		assertThatThrownBy(() -> engine.reserve(productId, 1, TTL)).isInstanceOf(IllegalStateException.class);
+
+		engine.start();
+		try {
+			assertThat(engine.reserve(productId, 1, TTL).outcome()).isEqualTo(StockReservationEngine.Outcome.RESERVED);
+		} finally {
+			engine.stop();
+		}
+
+		assertThatThrownBy(() -> engine.reserve(productId, 1, TTL)).isInstanceOf(IllegalStateException.class);
+		assertThat(jdbcTemplate.queryForObject("select quantity from product where id = ?", Integer.class, productId))
+				.isEqualTo(INITIAL_QUANTITY - 1);
+	}
+
+	private Long newProduct() {
+		Category category = new Category();
+		category.setName("Bikes");
+		category = categoryDao.save(category);
+
+		Product product = new Product();
+		product.setName("Road bike");
+		product.setQuantity(INITIAL_QUANTITY);
+		product.setCategory(category);
+		return productDao.save(product).getId();
+	}
+
+}
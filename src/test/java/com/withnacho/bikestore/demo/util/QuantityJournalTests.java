@@ -0,0 +1,142 @@
+package com.withnacho.bikestore.demo.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class QuantityJournalTests {
+
+	// One record per segment.
+	private static final long SEGMENT_BYTES = 24;
+
+	@TempDir
+	private Path directory;
+
+	@Test
+	void theIdIsKeptAcrossOpens() throws IOException {
+		String id;
+		try (QuantityJournal journal = new QuantityJournal(directory, SEGMENT_BYTES)) {
+			id = journal.getId();
+		}
+
+		try (QuantityJournal journal = new QuantityJournal(directory, SEGMENT_BYTES)) {
+			assertThat(journal.getId()).isNotBlank().isEqualTo(id);
+		}
+	}
+
+	@Test
+	void theDirectoryCannotBeOpenedTwice() throws IOException {
+		try (QuantityJournal journal = new QuantityJournal(directory, SEGMENT_BYTES)) {
+			assertThatThrownBy(() -> new QuantityJournal(directory, SEGMENT_BYTES))
+					.isInstanceOf(IOException.class);
+		}
+	}
+
+	@Test
+	void onlyTheUpdatesAfterTheCheckpointAreReplayed() throws IOException {
+		try (QuantityJournal journal = new QuantityJournal(directory, 1024)) {
+			assertThat(journal.recover(0)).isEmpty();
+			assertThat(journal.append(new long[] {1, 2}, new int[] {5, -3})).isEqualTo(2);
+			assertThat(journal.append(new long[] {1}, new int[] {7})).isEqualTo(3);
+		}
+
+		try (QuantityJournal journal = new QuantityJournal(directory, 1024)) {
+			assertThat(journal.recover(1)).containsExactly(
+					new QuantityJournal.Entry(2, 2, -3),
+					new QuantityJournal.Entry(3, 1, 7));
+			// The numbering goes on after the last recovered update.
+			assertThat(journal.append(new long[] {4}, new int[] {1})).isEqualTo(4);
+		}
+	}
+
+	@Test
+	void aTornRecordAtTheEndIsDropped() throws IOException {
+		try (QuantityJournal journal = new QuantityJournal(directory, 1024)) {
+			journal.recover(0);
+			journal.append(new long[] {1, 2}, new int[] {5, 6});
+		}
+
+		// The process died halfway through writing the next record.
+		Path segment = segments().get(0);
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 0, 0, 0, 0, 3, 0, 0}));
+		}
+
+		try (QuantityJournal journal = new QuantityJournal(directory, 1024)) {
+			assertThat(journal.recover(0)).containsExactly(
+					new QuantityJournal.Entry(1, 1, 5),
+					new QuantityJournal.Entry(2, 2, 6));
+			assertThat(Files.size(segment)).isEqualTo(48);
+			assertThat(journal.append(new long[] {3}, new int[] {7})).isEqualTo(3);
+		}
+	}
+
+	@Test
+	void aCorruptRecordEndsTheSegment() throws IOException {
+		try (QuantityJournal journal = new QuantityJournal(directory, 1024)) {
+			journal.recover(0);
+			journal.append(new long[] {1, 2, 3}, new int[] {5, 6, 7});
+		}
+
+		// Flips a byte of the delta of the second record.
+		Path segment = segments().get(0);
+		byte[] bytes = Files.readAllBytes(segment);
+		bytes[24 + 19] ^= 1;
+		Files.write(segment, bytes);
+
+		try (QuantityJournal journal = new QuantityJournal(directory, 1024)) {
+			assertThat(journal.recover(0)).containsExactly(new QuantityJournal.Entry(1, 1, 5));
+			assertThat(Files.size(segment)).isEqualTo(24);
+		}
+	}
+
+	@Test
+	void theSegmentsAreDeletedOnceCheckpointed() throws IOException {
+		try (QuantityJournal journal = new QuantityJournal(directory, SEGMENT_BYTES)) {
+			journal.recover(0);
+			for (int i = 1; i <= 3; i++) {
+				journal.append(new long[] {i}, new int[] {i});
+			}
+			assertThat(segments()).hasSize(3);
+
+			// The second segment still holds an update not in the DB.
+			journal.checkpoint(1);
+			assertThat(segments()).hasSize(2);
+
+			// The segment written is kept, even when all of its updates are in the DB.
+			journal.checkpoint(3);
+			assertThat(segments()).hasSize(1);
+			assertThat(journal.append(new long[] {4}, new int[] {4})).isEqualTo(4);
+		}
+
+		try (QuantityJournal journal = new QuantityJournal(directory, SEGMENT_BYTES)) {
+			assertThat(journal.recover(3)).containsExactly(new QuantityJournal.Entry(4, 4, 4));
+		}
+	}
+
+	@Test
+	void appendingBeforeRecoveringFails() throws IOException {
+		try (QuantityJournal journal = new QuantityJournal(directory, SEGMENT_BYTES)) {
+			assertThatThrownBy(() -> journal.append(new long[] {1}, new int[] {1}))
+					.isInstanceOf(IllegalStateException.class);
+		}
+	}
+
+	private List<Path> segments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter((file) -> file.getFileName().toString().endsWith(".journal")).sorted().toList();
+		}
+	}
+
+}